@@ -0,0 +1,312 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD fill of a TriangleInterpPaintContext raster, using the JDK Vector API: a strip of pixels as wide as the
+ * preferred vector is evaluated at once - edge functions, coverage mask and colour blend - and stored with a mask.
+ * <p>
+ * Every lane performs the same float operations in the same order as the scalar fills (no fused multiply-adds, and
+ * the same NaN handling in coverage tests and float to int casts), so the output is bit-identical to them.
+ * <p>
+ * Requires '--add-modules jdk.incubator.vector' to compile and run, so is kept out of src and built separately (see
+ * README.md). TriangleInterpPaintContext only loads this class when that module is present, and VectorFillKernelCheck
+ * compares its output with the scalar fills.
+ *
+ * @author 170004680
+ */
+public class VectorFillKernel implements TriangleInterpPaintContext.FillKernel {
+
+
+    // Float and int vectors of the same shape, so they have the same number of lanes.
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    private static final FloatVector LANE_INDICES = FloatVector.zero(FLOATS).addIndex(1); // 0, 1, 2, ... per lane.
+    private static final FloatVector ZERO = FloatVector.zero(FLOATS);
+    private static final FloatVector ONE = FloatVector.broadcast(FLOATS, 1f);
+    private static final float TWO_POW_23 = 8388608f; // Smallest float whose ulp is 1.
+
+
+    // Overridden Methods:
+
+    /**
+     * Fill raster data array with interpolated colour information, one vector of pixels at a time.
+     *
+     * @param context Context holding the triangle and its colours.
+     * @param xA      The x co-ordinate of the area in device space for which colors are generated.
+     * @param yA      The y co-ordinate of the area in device space for which colors are generated.
+     * @param w       The width of the area in device space.
+     * @param h       The height of the area in device space.
+     * @param data    Raster data to fill.
+     */
+    @Override
+    public void fillRaster(TriangleInterpPaintContext context, int xA, int yA, int w, int h, int[] data) {
+
+        Colors colors = new Colors(context);
+
+        for (int i = 0; i < h; i++) {
+
+            float y = yA + i + .5f;
+            float ypart11 = -context.x23 * (y - context.y3);
+            float ypart21 = context.x13 * (y - context.y3);
+
+            for (int j = 0; j < w; j += INTS.length()) {
+
+                VectorMask<Integer> inRow = INTS.indexInRange(j, w); // Lanes past the end of the row are not stored.
+
+                sample(context, colors, xA + j, .5f, ypart11, ypart21).intoArray(data, i * w + j, inRow);
+
+            }
+
+        }
+
+    } // fillRaster().
+
+    /**
+     * Fill raster data array with interpolated colour information, with multi-sample anti-aliasing, one vector of
+     * pixels at a time: coverage is tested at every sample, and the colour evaluated once per pixel.
+     *
+     * @param context Context holding the triangle and its colours.
+     * @param xA      The x co-ordinate of the area in device space for which colors are generated.
+     * @param yA      The y co-ordinate of the area in device space for which colors are generated.
+     * @param w       The width of the area in device space.
+     * @param h       The height of the area in device space.
+     * @param data    Raster data to fill.
+     */
+    @Override
+    public void fillRasterMSAA(TriangleInterpPaintContext context, int xA, int yA, int w, int h, int[] data) {
+
+        Colors colors = new Colors(context);
+        float[] samples = context.samplePattern.getOffsets();
+        int numSamples = context.samplePattern.getNumSamples();
+        float inverseSamples = 1f / numSamples;
+
+        float[] ypart1 = new float[numSamples], ypart2 = new float[numSamples]; // Row terms of each sample.
+
+        for (int i = 0; i < h; i++) {
+
+            for (int s = 0; s < numSamples; s++) {
+                float y = yA + i + samples[2 * s + 1];
+                ypart1[s] = -context.x23 * (y - context.y3);
+                ypart2[s] = context.x13 * (y - context.y3);
+            }
+
+            for (int j = 0; j < w; j += INTS.length()) {
+
+                VectorMask<Integer> inRow = INTS.indexInRange(j, w); // Lanes past the end of the row are not stored.
+                FloatVector x0 = pixelX(xA + j);
+
+                // Sum the barycentric coordinates of the covered samples, in sample order as the scalar fill does.
+                FloatVector l1Sum = ZERO, l2Sum = ZERO, l3Sum = ZERO, covered = ZERO;
+                for (int s = 0; s < numSamples; s++) {
+
+                    FloatVector dx = x0.add(samples[2 * s]).sub(context.x3);
+                    FloatVector l1 = dx.mul(context.y23).add(ypart1[s]).mul(context.denominator);
+                    FloatVector l2 = dx.mul(-context.y13).add(ypart2[s]).mul(context.denominator);
+                    FloatVector l3 = ONE.sub(l1).sub(l2);
+
+                    VectorMask<Float> inside = outside(l1, l2, l3).not();
+                    l1Sum = l1Sum.add(l1, inside);
+                    l2Sum = l2Sum.add(l2, inside);
+                    l3Sum = l3Sum.add(l3, inside);
+                    covered = covered.add(1f, inside);
+
+                }
+
+                VectorMask<Float> uncovered = covered.compare(VectorOperators.EQ, 0f);
+                if (uncovered.allTrue()) { // Whole strip misses the triangle.
+                    IntVector.zero(INTS).intoArray(data, i * w + j, inRow);
+                    continue;
+                }
+
+                // mixColor3() at the centroid.
+                FloatVector normalize = ONE.div(l1Sum.add(l2Sum).add(l3Sum));
+                IntVector a = mix3Channel(l1Sum, l2Sum, l3Sum, colors.a1, colors.a2, colors.a3, normalize);
+                IntVector r = mix3Channel(l1Sum, l2Sum, l3Sum, colors.r1, colors.r2, colors.r3, normalize);
+                IntVector g = mix3Channel(l1Sum, l2Sum, l3Sum, colors.g1, colors.g2, colors.g3, normalize);
+                IntVector b = mix3Channel(l1Sum, l2Sum, l3Sum, colors.b1, colors.b2, colors.b3, normalize);
+                IntVector color = pack(a, r, g, b);
+
+                // scaleColorAlpha(color, covered * inverseSamples) where partly covered.
+                FloatVector alpha = toFloats(channel(color, 24)).mul(1f / 255f).mul(covered.mul(inverseSamples));
+                IntVector scaledAlpha = toInts(alpha.mul(255f)).and(0xff).lanewise(VectorOperators.LSHL, 24);
+                VectorMask<Float> partial = covered.compare(VectorOperators.LT, (float) numSamples);
+                color = color.blend(color.and(0x00ffffff).or(scaledAlpha), partial.cast(INTS));
+
+                color.blend(0, uncovered.cast(INTS)).intoArray(data, i * w + j, inRow);
+
+            }
+
+        }
+
+    } // fillRasterMSAA().
+
+    // Utility Functions:
+
+    /**
+     * Evaluate the triangle at one sample position of a strip of pixels: barycentric co-ordinates, coverage, and the
+     * interpolated colour where covered (mixColor3()).
+     *
+     * @param context Context holding the triangle.
+     * @param colors  Channels of the triangle's vertex colours.
+     * @param x0      X co-ordinate (in device space) of the first pixel of the strip.
+     * @param offsetX Offset of the sample within each pixel, in X.
+     * @param ypart1  Row term of the first barycentric co-ordinate at the sample.
+     * @param ypart2  Row term of the second barycentric co-ordinate at the sample.
+     * @return ARGB colour per pixel, or 0 where the sample is outside the triangle.
+     */
+    private static IntVector sample(TriangleInterpPaintContext context, Colors colors, int x0, float offsetX,
+                                    float ypart1, float ypart2) {
+
+        FloatVector dx = pixelX(x0).add(offsetX).sub(context.x3);
+
+        // Calculate barycentric coordinates for (x, y).
+        FloatVector l1 = dx.mul(context.y23).add(ypart1).mul(context.denominator);
+        FloatVector l2 = dx.mul(-context.y13).add(ypart2).mul(context.denominator);
+        FloatVector l3 = ONE.sub(l1).sub(l2);
+
+        VectorMask<Float> outside = outside(l1, l2, l3);
+        if (outside.allTrue()) return IntVector.zero(INTS); // Whole strip misses the triangle.
+
+        FloatVector normalize = ONE.div(l1.add(l2).add(l3));
+        IntVector a = mix3Channel(l1, l2, l3, colors.a1, colors.a2, colors.a3, normalize);
+        IntVector r = mix3Channel(l1, l2, l3, colors.r1, colors.r2, colors.r3, normalize);
+        IntVector g = mix3Channel(l1, l2, l3, colors.g1, colors.g2, colors.g3, normalize);
+        IntVector b = mix3Channel(l1, l2, l3, colors.b1, colors.b2, colors.b3, normalize);
+
+        return pack(a, r, g, b).blend(0, outside.cast(INTS));
+
+    } // sample().
+
+    /**
+     * As in the scalar fills, a sample is outside only if a co-ordinate compares below 0 (so NaN counts as inside).
+     *
+     * @param l1 First barycentric co-ordinates.
+     * @param l2 Second barycentric co-ordinates.
+     * @param l3 Third barycentric co-ordinates.
+     * @return Lanes whose sample is outside the triangle.
+     */
+    private static VectorMask<Float> outside(FloatVector l1, FloatVector l2, FloatVector l3) {
+        return l1.lt(0f).or(l2.lt(0f)).or(l3.lt(0f));
+    } // outside().
+
+    /**
+     * One channel of mixColor3(): (c1 * m1 + c2 * m2 + c3 * m3) * normalize, cast to int.
+     *
+     * @param m1        Weight 1.
+     * @param m2        Weight 2.
+     * @param m3        Weight 3.
+     * @param c1        Channel value of color 1.
+     * @param c2        Channel value of color 2.
+     * @param c3        Channel value of color 3.
+     * @param normalize Reciprocal of the sum of the weights.
+     * @return Mixed channel value.
+     */
+    private static IntVector mix3Channel(FloatVector m1, FloatVector m2, FloatVector m3,
+                                         float c1, float c2, float c3, FloatVector normalize) {
+
+        return toInts(m1.mul(c1).add(m2.mul(c2)).add(m3.mul(c3)).mul(normalize));
+
+    } // mix3Channel().
+
+    /**
+     * @param argb  ARGB integers.
+     * @param shift Bit position of the channel.
+     * @return Channel values (0 - 255).
+     */
+    private static IntVector channel(IntVector argb, int shift) {
+        return argb.lanewise(VectorOperators.ASHR, shift).and(0xff);
+    } // channel().
+
+    /**
+     * @param a Alpha components.
+     * @param r Red components.
+     * @param g Green components.
+     * @param b Blue components.
+     * @return ARGB integers.
+     */
+    private static IntVector pack(IntVector a, IntVector r, IntVector g, IntVector b) {
+
+        return a.lanewise(VectorOperators.LSHL, 24)
+                .or(r.lanewise(VectorOperators.LSHL, 16))
+                .or(g.lanewise(VectorOperators.LSHL, 8))
+                .or(b);
+
+    } // pack().
+
+    /**
+     * @param x0 X co-ordinate of the first pixel of a strip.
+     * @return X co-ordinate of each pixel of the strip, as floats (exact, as device co-ordinates are far below 2^24).
+     */
+    private static FloatVector pixelX(int x0) {
+        return LANE_INDICES.add((float) x0);
+    } // pixelX().
+
+    /**
+     * @param values Integers.
+     * @return Values converted to float, as by a cast.
+     */
+    private static FloatVector toFloats(IntVector values) {
+        return (FloatVector) values.convertShape(VectorOperators.I2F, FLOATS, 0);
+    } // toFloats().
+
+    /**
+     * Convert floats to int as a cast would, for the values this kernel keeps: NaN and [0, 2^23). (Lanes outside the
+     * triangle may hold other values, but those are replaced by 0.) Done with float arithmetic rather than an F2I
+     * conversion, which JDK 17 does not compile to SIMD instructions.
+     *
+     * @param values Floats.
+     * @return Values converted to int (truncating, NaN to 0).
+     */
+    private static IntVector toInts(FloatVector values) {
+
+        // Adding then removing 2^23 rounds to the nearest integer; step back where that rounded up, to truncate.
+        FloatVector rounded = values.add(TWO_POW_23).sub(TWO_POW_23);
+        FloatVector truncated = rounded.sub(ONE.blend(0f, rounded.compare(VectorOperators.LE, values)));
+        truncated = truncated.blend(0f, values.compare(VectorOperators.NE, values)); // NaN becomes 0.
+
+        // An integer i in [0, 2^23) added to 2^23 has the bits of 2^23 with i in the mantissa.
+        return truncated.add(TWO_POW_23).reinterpretAsInts().sub(Float.floatToRawIntBits(TWO_POW_23));
+
+    } // toInts().
+
+
+    /**
+     * Channels of the three vertex colours of a triangle, as floats ready to multiply by weights.
+     */
+    private static class Colors {
+
+
+        private final float a1, r1, g1, b1, a2, r2, g2, b2, a3, r3, g3, b3;
+
+
+        /**
+         * Constructor:
+         *
+         * @param context Context holding the triangle's colours.
+         */
+        private Colors(TriangleInterpPaintContext context) {
+
+            a1 = (context.c1 >> 24) & 0xff;
+            r1 = (context.c1 >> 16) & 0xff;
+            g1 = (context.c1 >> 8) & 0xff;
+            b1 = context.c1 & 0xff;
+            a2 = (context.c2 >> 24) & 0xff;
+            r2 = (context.c2 >> 16) & 0xff;
+            g2 = (context.c2 >> 8) & 0xff;
+            b2 = context.c2 & 0xff;
+            a3 = (context.c3 >> 24) & 0xff;
+            r3 = (context.c3 >> 16) & 0xff;
+            g3 = (context.c3 >> 8) & 0xff;
+            b3 = context.c3 & 0xff;
+
+        } // Colors().
+
+
+    } // Colors{}.
+
+
+} // VectorFillKernel{}.
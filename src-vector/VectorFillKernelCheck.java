@@ -0,0 +1,100 @@
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Check that VectorFillKernel is bit-identical to the scalar fills of TriangleInterpPaintContext: random triangles
+ * (including degenerate ones) are filled both ways over tiles of random position and width, without anti-aliasing
+ * and with every multi-sample pattern, and the raster data compared.
+ * <p>
+ * Run with 'java --add-modules jdk.incubator.vector VectorFillKernelCheck [num_triangles]' - it exits with an error
+ * status if any tile differs.
+ *
+ * @author 170004680
+ */
+public class VectorFillKernelCheck {
+
+
+    private static final long SEED = 170004680; // Fixed, so a failure can be reproduced.
+    private static final int DEFAULT_TRIANGLES = 20000; // Triangles filled per sample pattern.
+    private static final float EXTENT = 60; // Triangles lie within [0, EXTENT) in x and y.
+
+
+    /**
+     * Entry point to the check.
+     *
+     * @param args args[0] - Number of triangles per sample pattern (optional, default 20000).
+     */
+    public static void main(String[] args) {
+
+        int numTriangles = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_TRIANGLES;
+
+        SamplePattern[] samplePatterns = {
+                null, // No anti-aliasing.
+                SamplePattern.create(2, SamplePattern.Type.ROTATED_GRID),
+                SamplePattern.create(4, SamplePattern.Type.ROTATED_GRID),
+                SamplePattern.create(8, SamplePattern.Type.ROTATED_GRID),
+                SamplePattern.create(16, SamplePattern.Type.ROTATED_GRID),
+                SamplePattern.create(4, SamplePattern.Type.POISSON),
+                SamplePattern.create(16, SamplePattern.Type.POISSON)
+        };
+
+        VectorFillKernel kernel = new VectorFillKernel();
+        Random random = new Random(SEED);
+        int mismatches = 0;
+
+        for (SamplePattern samplePattern : samplePatterns) {
+            for (int t = 0; t < numTriangles; t++) {
+
+                Point2D.Float p1 = randomPoint(random);
+                Point2D.Float p2 = randomPoint(random);
+                Point2D.Float p3 = (t % 50 == 0) ? new Point2D.Float(p1.x, p1.y) : randomPoint(random); // Degenerate.
+
+                TriangleInterpPaintContext context = new TriangleInterpPaintContext(p1, p2, p3,
+                        new Color(random.nextInt(), true), new Color(random.nextInt(), true),
+                        new Color(random.nextInt(), true), new AffineTransform(),
+                        samplePattern != null, (samplePattern != null) ? samplePattern : P2main.samplePattern);
+
+                // Tiles overhang the triangle and have widths that are not a multiple of the vector length.
+                int xA = random.nextInt(8) - 4, yA = random.nextInt(8) - 4;
+                int w = (int) EXTENT + random.nextInt(16), h = 1 + random.nextInt((int) EXTENT + 8);
+
+                int[] expected = new int[w * h];
+                int[] actual = new int[w * h];
+                context.fill(null, xA, yA, w, h, expected);
+                context.fill(kernel, xA, yA, w, h, actual);
+
+                if (!Arrays.equals(expected, actual)) {
+                    if (mismatches == 0) {
+                        System.out.println("First mismatch: triangle " + p1 + ", " + p2 + ", " + p3
+                                + " in tile (" + xA + ", " + yA + ", " + w + "x" + h + ").");
+                    }
+                    mismatches++;
+                }
+
+            }
+        }
+
+        int checked = samplePatterns.length * numTriangles;
+        if (mismatches > 0) {
+            System.out.println("VectorFillKernelCheck: " + mismatches + " of " + checked + " tiles differ.");
+            System.exit(-1); // Error status.
+        }
+        System.out.println("VectorFillKernelCheck: all " + checked + " tiles identical to the scalar fills.");
+
+    } // main().
+
+    // Utility Functions:
+
+    /**
+     * @param random Source of the co-ordinates.
+     * @return Point with random co-ordinates in [0, EXTENT).
+     */
+    private static Point2D.Float randomPoint(Random random) {
+        return new Point2D.Float(random.nextFloat() * EXTENT, random.nextFloat() * EXTENT);
+    } // randomPoint().
+
+
+} // VectorFillKernelCheck{}.
@@ -0,0 +1,393 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Streaming parser for the numeric CSV files of the data set (mesh, face data and weight files), decoding ASCII
+ * numbers straight from a byte buffer into primitive arrays without creating intermediate Strings.
+ * <p>
+ * Numbers with at most 15 significant digits and a decimal exponent within +/-22 - which covers the data set - are
+ * converted exactly using a single correctly rounded multiply or divide of two exactly representable doubles. Anything
+ * else falls back to Double.parseDouble, so every value is bit-identical to the previous line.split(",") parsing.
+ * <p>
+ * Large buffers are split at line boundaries into chunks that are parsed in parallel on the current fork-join pool.
+ *
+ * @author 170004680
+ */
+public class CsvNumberParser {
+
+
+    private static final int PARALLEL_CHUNK_SIZE = 1 << 22; // Buffers larger than this (4MB) are parsed in chunks.
+    private static final long MAX_EXACT_MANTISSA = 1L << 53; // Largest mantissa exactly representable as a double.
+    private static final int MAX_EXACT_EXPONENT = 22; // Largest power of ten exactly representable as a double.
+    private static final int MAX_MANTISSA_DIGITS = 18; // Digits that can be accumulated in a long without overflow.
+
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_EXPONENT + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_EXACT_EXPONENT; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private final ByteBuffer data; // Buffer being parsed (absolute gets only, so its position is never changed).
+    private final int end; // Index one past the last byte of the range being parsed.
+    private final int valuesPerLine; // Number of values taken from each non-blank line.
+    private int pos; // Index of the next byte to read.
+
+    private float[] floatValues; // Parsed values when decoding floats.
+    private int[] intValues; // Parsed values when decoding integers.
+    private int numValues; // Number of values parsed so far.
+
+
+    /**
+     * Constructor: Parser over a range of a buffer.
+     *
+     * @param data          Buffer to parse.
+     * @param start         Index of the first byte of the range.
+     * @param end           Index one past the last byte of the range.
+     * @param valuesPerLine Number of values taken from each non-blank line (extra fields are ignored).
+     * @param integers      Whether to decode integers (true), or floats (false).
+     */
+    private CsvNumberParser(ByteBuffer data, int start, int end, int valuesPerLine, boolean integers) {
+
+        this.data = data;
+        this.pos = start;
+        this.end = end;
+        this.valuesPerLine = valuesPerLine;
+
+        // Assume roughly ten bytes per value to size the output, growing it if that is too small.
+        int estimate = Math.max(valuesPerLine, (end - start) / 10);
+        if (integers) {
+            this.intValues = new int[estimate];
+        } else {
+            this.floatValues = new float[estimate];
+        }
+
+    } // CsvNumberParser().
+
+    // Utility Functions:
+
+    /**
+     * Parse every non-blank line of a buffer as valuesPerLine floating point numbers.
+     *
+     * @param data          Buffer holding the CSV text, from its position to its limit.
+     * @param valuesPerLine Number of values to take from each line.
+     * @return Values in the order they appear in the buffer.
+     * @throws IOException If a line is malformed (the message gives the line number).
+     */
+    public static float[] parseFloats(ByteBuffer data, int valuesPerLine) throws IOException {
+
+        List<CsvNumberParser> chunks = parseChunks(data, valuesPerLine, false);
+
+        float[] values = new float[countValues(chunks)];
+        int offset = 0;
+        for (CsvNumberParser chunk : chunks) {
+            System.arraycopy(chunk.floatValues, 0, values, offset, chunk.numValues);
+            offset += chunk.numValues;
+        }
+
+        return values;
+
+    } // parseFloats().
+
+    /**
+     * Parse every non-blank line of a buffer as valuesPerLine integers. Values written with a fractional part or an
+     * exponent (e.g. "1.0e+01") are accepted and truncated, as a cast from double would.
+     *
+     * @param data          Buffer holding the CSV text, from its position to its limit.
+     * @param valuesPerLine Number of values to take from each line.
+     * @return Values in the order they appear in the buffer.
+     * @throws IOException If a line is malformed (the message gives the line number).
+     */
+    public static int[] parseInts(ByteBuffer data, int valuesPerLine) throws IOException {
+
+        List<CsvNumberParser> chunks = parseChunks(data, valuesPerLine, true);
+
+        int[] values = new int[countValues(chunks)];
+        int offset = 0;
+        for (CsvNumberParser chunk : chunks) {
+            System.arraycopy(chunk.intValues, 0, values, offset, chunk.numValues);
+            offset += chunk.numValues;
+        }
+
+        return values;
+
+    } // parseInts().
+
+    /**
+     * Split a buffer at line boundaries and parse each chunk, in parallel when there is more than one.
+     *
+     * @param data          Buffer holding the CSV text.
+     * @param valuesPerLine Number of values to take from each line.
+     * @param integers      Whether to decode integers (true), or floats (false).
+     * @return Parsers holding the values of each chunk, in buffer order.
+     * @throws IOException If a line is malformed.
+     */
+    private static List<CsvNumberParser> parseChunks(ByteBuffer data, int valuesPerLine, boolean integers)
+            throws IOException {
+
+        List<CsvNumberParser> chunks = new ArrayList<>();
+
+        int chunkStart = data.position();
+        while (chunkStart < data.limit()) {
+
+            int chunkEnd = Math.min(data.limit(), chunkStart + PARALLEL_CHUNK_SIZE);
+            while (chunkEnd < data.limit() && data.get(chunkEnd - 1) != '\n') chunkEnd++; // Finish the line.
+
+            chunks.add(new CsvNumberParser(data, chunkStart, chunkEnd, valuesPerLine, integers));
+            chunkStart = chunkEnd;
+
+        }
+
+        try {
+
+            if (chunks.size() == 1) {
+                chunks.get(0).parse();
+            } else {
+                List<RecursiveAction> tasks = new ArrayList<>(chunks.size());
+                for (CsvNumberParser chunk : chunks) {
+                    tasks.add(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            try {
+                                chunk.parse();
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                    });
+                }
+                ForkJoinTask.invokeAll(tasks); // Runs in the caller's fork-join pool, or the common pool.
+            }
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        return chunks;
+
+    } // parseChunks().
+
+    /**
+     * @param chunks Parsed chunks.
+     * @return Total number of values across the chunks.
+     */
+    private static int countValues(List<CsvNumberParser> chunks) {
+
+        int total = 0;
+        for (CsvNumberParser chunk : chunks) total += chunk.numValues;
+        return total;
+
+    } // countValues().
+
+    /**
+     * Parse every line in this parser's range.
+     *
+     * @throws IOException If a line is malformed.
+     */
+    private void parse() throws IOException {
+
+        while (pos < end) {
+
+            skipSpaces();
+            if (pos < end && isLineEnd(data.get(pos))) { // Blank line.
+                pos++;
+                continue;
+            }
+            if (pos >= end) break;
+
+            for (int i = 0; i < valuesPerLine; i++) {
+
+                if (i > 0) {
+                    skipSpaces();
+                    if (pos >= end || data.get(pos) != ',') throw malformed("expected " + valuesPerLine + " values");
+                    pos++;
+                }
+
+                double value = nextNumber();
+                store(value);
+
+            }
+
+            // Ignore any further fields, as splitting the line would.
+            skipSpaces();
+            if (pos < end && data.get(pos) != ',' && data.get(pos) != '\n') throw malformed("unexpected character");
+            while (pos < end && data.get(pos) != '\n') pos++;
+            pos++;
+
+        }
+
+    } // parse().
+
+    /**
+     * Decode the number starting at the current position.
+     *
+     * @return Decoded value.
+     * @throws IOException If there is no valid number at the current position.
+     */
+    private double nextNumber() throws IOException {
+
+        skipSpaces();
+        int start = pos;
+
+        boolean negative = false;
+        if (pos < end && (data.get(pos) == '-' || data.get(pos) == '+')) {
+            negative = data.get(pos) == '-';
+            pos++;
+        }
+
+        long mantissa = 0; // Significant digits, ignoring leading zeros.
+        int numDigits = 0; // Number of digits accumulated into the mantissa.
+        int exponent = 0; // Power of ten the mantissa must be scaled by.
+        boolean anyDigits = false;
+        boolean exact = true; // False once digits have been dropped from the mantissa.
+
+        // Integer part.
+        while (pos < end && isDigit(data.get(pos))) {
+            int digit = data.get(pos++) - '0';
+            anyDigits = true;
+            if (numDigits < MAX_MANTISSA_DIGITS) {
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0) numDigits++;
+            } else {
+                exponent++;
+                if (digit != 0) exact = false;
+            }
+        }
+
+        // Fractional part.
+        if (pos < end && data.get(pos) == '.') {
+            pos++;
+            while (pos < end && isDigit(data.get(pos))) {
+                int digit = data.get(pos++) - '0';
+                anyDigits = true;
+                if (numDigits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + digit;
+                    if (mantissa != 0) numDigits++;
+                    exponent--;
+                } else if (digit != 0) {
+                    exact = false;
+                }
+            }
+        }
+
+        // Exponent.
+        if (anyDigits && pos < end && (data.get(pos) == 'e' || data.get(pos) == 'E')) {
+
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < end && (data.get(pos) == '-' || data.get(pos) == '+')) {
+                negativeExponent = data.get(pos) == '-';
+                pos++;
+            }
+
+            int exponentValue = 0;
+            boolean anyExponentDigits = false;
+            while (pos < end && isDigit(data.get(pos))) {
+                exponentValue = Math.min(exponentValue * 10 + (data.get(pos++) - '0'), 100000);
+                anyExponentDigits = true;
+            }
+            if (!anyExponentDigits) return fallback(start);
+
+            exponent += negativeExponent ? -exponentValue : exponentValue;
+
+        }
+
+        if (!anyDigits) return fallback(start);
+
+        // Fast path: both operands are exact doubles, so one IEEE operation gives the correctly rounded result.
+        if (exact && mantissa <= MAX_EXACT_MANTISSA && Math.abs(exponent) <= MAX_EXACT_EXPONENT) {
+            double value = (exponent < 0) ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+
+        return fallback(start);
+
+    } // nextNumber().
+
+    /**
+     * Decode a number the fast path cannot handle exactly (or that is malformed) with Double.parseDouble.
+     *
+     * @param start Index of the first byte of the number.
+     * @return Decoded value.
+     * @throws IOException If the field is not a valid number.
+     */
+    private double fallback(int start) throws IOException {
+
+        // The field runs up to the next separator.
+        pos = start;
+        while (pos < end && data.get(pos) != ',' && !isLineEnd(data.get(pos))) pos++;
+
+        byte[] field = new byte[pos - start];
+        data.get(start, field);
+        String text = new String(field, StandardCharsets.US_ASCII);
+
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw malformed("invalid number \"" + text.trim() + "\"");
+        }
+
+    } // fallback().
+
+    /**
+     * @param value Parsed value to append to the output.
+     */
+    private void store(double value) {
+
+        if (intValues != null) {
+            if (numValues == intValues.length) intValues = Arrays.copyOf(intValues, intValues.length * 2);
+            intValues[numValues++] = (int) value;
+        } else {
+            if (numValues == floatValues.length) floatValues = Arrays.copyOf(floatValues, floatValues.length * 2);
+            floatValues[numValues++] = (float) value;
+        }
+
+    } // store().
+
+    /**
+     * Skip spaces, tabs and carriage returns (but not line feeds).
+     */
+    private void skipSpaces() {
+        while (pos < end && (data.get(pos) == ' ' || data.get(pos) == '\t' || data.get(pos) == '\r')) pos++;
+    } // skipSpaces().
+
+    /**
+     * @param message Description of the problem.
+     * @return Exception giving the (1-based) line number of the current position within the whole buffer.
+     */
+    private IOException malformed(String message) {
+
+        int line = 1;
+        for (int i = 0; i < Math.min(pos, data.limit()); i++) {
+            if (data.get(i) == '\n') line++;
+        }
+
+        return new IOException("Line " + line + ": " + message);
+
+    } // malformed().
+
+    /**
+     * @param b Byte to check.
+     * @return True if b is an ASCII digit.
+     */
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    } // isDigit().
+
+    /**
+     * @param b Byte to check.
+     * @return True if b ends a line.
+     */
+    private static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    } // isLineEnd().
+
+
+} // CsvNumberParser{}.
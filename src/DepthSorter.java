@@ -0,0 +1,216 @@
+import java.util.Arrays;
+
+/**
+ * Orders the triangles of a mesh by depth for painter's algorithm, without creating any objects per frame.
+ * <p>
+ * The depth of a triangle is the Z co-ordinate of its nearest vertex. Each depth is turned into an int whose unsigned
+ * order is the order of the floats (flip every bit of negative floats, only the sign bit of positive ones), and the
+ * triangle indices are then sorted by those keys with a least-significant-digit radix sort: one counting pass per byte
+ * of the key, so O(n) for any number of triangles rather than O(n log n) comparisons. Bytes that are the same for
+ * every key (e.g. the sign and exponent when depths share a range) are skipped. The sort is stable, so triangles of
+ * equal depth keep their relative order. Key and order arrays are kept between frames and only grow.
+ * <p>
+ * The order of the last frame is kept, and the new depths are read in that order. If the order is still nearly right
+ * it is repaired with an insertion sort, which costs O(n + moves). Disorder is measured while reading the depths, as
+ * the number of adjacent pairs out of order; above a threshold, or if the repair moves too many entries, the radix
+ * sort is run instead, so a frame never costs much more than a full sort. Repaints that do not move the face (resizing,
+ * changing shading) then cost a single pass. A face has many triangles packed into its depth range, so whether a
+ * rotation step can be repaired depends on how far it turns the face; larger steps fall back to the radix sort.
+ * <p>
+ * The order is kept over every triangle of the mesh, even though only the triangles facing the viewer are drawn: the
+ * hidden ones are sorted too and only left out when the order is returned. Rotating changes which triangles are
+ * culled on every frame, so an order of just the visible triangles would never carry over to the next frame.
+ *
+ * @author 170004680
+ */
+public class DepthSorter {
+
+
+    private static final int RADIX_BITS = 8; // Bits of the key sorted per pass.
+    private static final int RADIX = 1 << RADIX_BITS; // Buckets per pass.
+    private static final int PASSES = Integer.SIZE / RADIX_BITS;
+    private static final int MAX_DESCENTS_SHIFT = 4; // Repair the last order if under 1/16 of pairs are out of order.
+    private static final int MAX_MOVES_PER_TRIANGLE = 8; // Repair gives up for a full sort after 8n moves.
+
+    private int[] keys = new int[0], keysScratch = new int[0]; // Sortable depth of each triangle, in current order.
+    private int[] order = new int[0], orderScratch = new int[0]; // Triangle indices, in current order.
+    private int[] visibleOrder = new int[0]; // Triangle indices of the visible triangles, in current order.
+    private final int[] counts = new int[PASSES * RADIX]; // Digit histogram of every pass.
+    private int[] orderedIndices; // Index buffer the current order is for (null before the first sort).
+    private int orderedTriangles; // Number of triangles the current order is for.
+    private boolean lastSortRepaired; // Whether the last sort repaired the previous order rather than sorting fully.
+
+
+    /**
+     * Constructor:
+     */
+    public DepthSorter() {
+    } // DepthSorter().
+
+    // Utility Functions:
+
+    /**
+     * Sort the triangles of a mesh from back to front (smallest Z to largest Z, as Z is towards the viewer).
+     *
+     * @param z            Z co-ordinate of each vertex.
+     * @param indices      Three vertex indices per triangle of the mesh.
+     * @param numTriangles Number of triangles of the mesh.
+     * @param visible      Whether each triangle is to be drawn this frame (null to draw every triangle).
+     * @return Indices of the visible triangles in drawing order (only as many entries are valid as there are visible
+     * triangles; reused next call).
+     */
+    public int[] sort(float[] z, int[] indices, int numTriangles, boolean[] visible) {
+
+        if (indices != orderedIndices || numTriangles != orderedTriangles) { // A different mesh: start from mesh order.
+            ensureCapacity(numTriangles);
+            for (int t = 0; t < numTriangles; t++) order[t] = t;
+            orderedIndices = indices;
+            orderedTriangles = numTriangles;
+        }
+
+        // New depth of each triangle, in the order of the last frame.
+        int descents = 0; // Adjacent pairs out of order.
+        for (int k = 0; k < numTriangles; k++) {
+            int t = order[k];
+            keys[k] = sortableKey(Math.max(z[indices[3 * t]], Math.max(z[indices[3 * t + 1]], z[indices[3 * t + 2]])));
+            if (k > 0 && Integer.compareUnsigned(keys[k - 1], keys[k]) > 0) descents++;
+        }
+
+        lastSortRepaired = descents <= (numTriangles >> MAX_DESCENTS_SHIFT)
+                && insertionSort(numTriangles, (long) MAX_MOVES_PER_TRIANGLE * numTriangles);
+        if (!lastSortRepaired) radixSort(numTriangles);
+
+        if (visible == null) return order;
+
+        // Hidden triangles are only left out now, so the next frame starts from the order of the whole mesh.
+        int numVisible = 0;
+        for (int k = 0; k < numTriangles; k++) {
+            int t = order[k];
+            if (visible[t]) visibleOrder[numVisible++] = t;
+        }
+
+        return visibleOrder;
+
+    } // sort().
+
+    /**
+     * Sort keys and order together by insertion, giving up once a number of entries have been moved. Either way the
+     * keys and order still match, so a sort can carry on from where this one stopped.
+     *
+     * @param n        Number of entries to sort.
+     * @param maxMoves Number of single-place moves after which to give up.
+     * @return Whether the entries were sorted.
+     */
+    private boolean insertionSort(int n, long maxMoves) {
+
+        long moves = 0;
+        for (int k = 1; k < n; k++) {
+
+            int key = keys[k];
+            if (Integer.compareUnsigned(keys[k - 1], key) <= 0) continue; // Already in place.
+
+            int triangle = order[k];
+            int j = k - 1;
+            do {
+                keys[j + 1] = keys[j];
+                order[j + 1] = order[j];
+                j--;
+            } while (j >= 0 && Integer.compareUnsigned(keys[j], key) > 0);
+            keys[j + 1] = key;
+            order[j + 1] = triangle;
+
+            moves += k - 1 - j;
+            if (moves > maxMoves) return false;
+
+        }
+
+        return true;
+
+    } // insertionSort().
+
+    /**
+     * Sort keys and order together by the unsigned value of the keys, leaving the result in keys and order.
+     *
+     * @param n Number of entries to sort.
+     */
+    private void radixSort(int n) {
+
+        // Histogram every digit in one pass over the keys.
+        Arrays.fill(counts, 0);
+        for (int k = 0; k < n; k++) {
+            int key = keys[k];
+            for (int pass = 0; pass < PASSES; pass++) {
+                counts[pass * RADIX + ((key >>> (pass * RADIX_BITS)) & (RADIX - 1))]++;
+            }
+        }
+
+        for (int pass = 0; pass < PASSES; pass++) {
+
+            int base = pass * RADIX, shift = pass * RADIX_BITS;
+            if (n == 0 || counts[base + ((keys[0] >>> shift) & (RADIX - 1))] == n) continue; // Digit never differs.
+
+            // Bucket counts to bucket start positions.
+            int position = 0;
+            for (int digit = 0; digit < RADIX; digit++) {
+                int count = counts[base + digit];
+                counts[base + digit] = position;
+                position += count;
+            }
+
+            for (int k = 0; k < n; k++) {
+                int key = keys[k];
+                int destination = counts[base + ((key >>> shift) & (RADIX - 1))]++;
+                keysScratch[destination] = key;
+                orderScratch[destination] = order[k];
+            }
+
+            int[] swap = keys;
+            keys = keysScratch;
+            keysScratch = swap;
+            swap = order;
+            order = orderScratch;
+            orderScratch = swap;
+
+        }
+
+    } // radixSort().
+
+    /**
+     * @param depth Depth as a float.
+     * @return Int whose unsigned order matches the order of the float (-0 sorts before +0).
+     */
+    static int sortableKey(float depth) {
+
+        int bits = Float.floatToRawIntBits(depth);
+        return bits ^ ((bits >> 31) | Integer.MIN_VALUE);
+
+    } // sortableKey().
+
+    /**
+     * Grow the key and order arrays so they hold at least n entries.
+     *
+     * @param n Number of triangles.
+     */
+    private void ensureCapacity(int n) {
+
+        if (order.length >= n) return;
+
+        keys = new int[n];
+        keysScratch = new int[n];
+        order = new int[n];
+        orderScratch = new int[n];
+        visibleOrder = new int[n];
+
+    } // ensureCapacity().
+
+    // Getters and Setters:
+
+    /**
+     * @return Whether the last sort repaired the previous order rather than sorting fully.
+     */
+    public boolean wasLastSortRepaired() {
+        return lastSortRepaired;
+    } // wasLastSortRepaired().
+
+
+} // DepthSorter{}.
@@ -1,65 +1,151 @@
-import java.util.ArrayList;
-
 /**
  * Custom data object representing a reference face.
+ * <p>
+ * Faces are stored in indexed form: one position and one colour per unique vertex (held as primitive arrays in a
+ * GeometryStore), plus a triangle index buffer of three vertex indices per triangle. Every vertex is shared by ~6
+ * triangles, so per-vertex stages (interpolation, rotation, scaling, lighting) run once per vertex rather than once per
+ * triangle corner.
  *
  * @author 170004680
  */
 public class Face3D {
 
 
-    private ArrayList<Triangle> faceData; // Array list of triangles for shape information.
+    private final GeometryStore geometry; // Position and colour of each unique vertex.
+    private final int[] indices; // Three 0-based vertex indices per triangle (may be shared between faces).
+    private final MeshAdjacency adjacency; // Triangles using each vertex (shared between faces with the same indices).
 
+    private float[] vertexNormals; // Unit normal (x,y,z) of each vertex, computed when first requested.
 
-    /**
-     * Blank constructor:
-     */
-    public Face3D() {
-        faceData = new ArrayList<>();
-    } // Face3D().
 
     /**
      * Constructor: A reference face is comprised of shape and color information.
      *
-     * @param faceData Array list of triangles for shape information.
+     * @param geometry  Position and colour of each unique vertex.
+     * @param indices   Three 0-based vertex indices per triangle (not copied, so must not be changed afterwards).
+     * @param adjacency Triangles using each vertex, built from the indices.
      */
-    public Face3D(ArrayList<Triangle> faceData) {
-        this.faceData = faceData;
+    public Face3D(GeometryStore geometry, int[] indices, MeshAdjacency adjacency) {
+
+        this.geometry = geometry;
+        this.indices = indices;
+        this.adjacency = adjacency;
+
     } // Face3D().
 
     // Utility Functions:
 
     /**
-     * @param index Index of triangle to retrieve.
-     * @return Triangle at index.
+     * Vertex normals are counted whether or not they have been computed yet, since drawing the face with Gouraud
+     * shading may compute them at any time, so the estimate never changes.
+     *
+     * @return Approximate number of bytes this face occupies on the heap (excluding the shared index and adjacency).
      */
-    public Triangle getTriangle(int index) {
-        return faceData.get(index);
-    } // getTriangle().
+    public long getEstimatedBytes() {
+        return geometry.getBytes() + 3L * 4L * getNumVertices();
+    } // getEstimatedBytes().
 
     /**
-     * @param triangle Add triangle to the set of face triangles.
+     * Compute the normal of every vertex as the area-weighted average of the normals of its adjacent triangles: the
+     * cross product of two edges of a triangle is its normal scaled by twice its area, so the cross products are summed
+     * as they are, then normalised once. Triangle normals are computed once each, then gathered per vertex through the
+     * adjacency, so the whole pass is O(V + T).
+     *
+     * @return Unit normal (x,y,z) of each vertex (zero for a vertex with no triangles of any area).
      */
-    public void addTriangle(Triangle triangle) {
-        faceData.add(triangle);
-    } // addTriangle().
+    private float[] computeVertexNormals() {
+
+        float[] x = geometry.getX(), y = geometry.getY(), z = geometry.getZ();
+
+        // Area-weighted normal of each triangle.
+        float[] triangleNormals = new float[3 * getNumTriangles()];
+        for (int t = 0; t < getNumTriangles(); t++) {
+
+            int i1 = indices[3 * t], i2 = indices[3 * t + 1], i3 = indices[3 * t + 2];
+
+            // U = p2 - p1, V = p3 - p1, N = U x V.
+            float uX = x[i2] - x[i1], uY = y[i2] - y[i1], uZ = z[i2] - z[i1];
+            float vX = x[i3] - x[i1], vY = y[i3] - y[i1], vZ = z[i3] - z[i1];
+            triangleNormals[3 * t] = (uY * vZ) - (uZ * vY);
+            triangleNormals[3 * t + 1] = (uZ * vX) - (uX * vZ);
+            triangleNormals[3 * t + 2] = (uX * vY) - (uY * vX);
+
+        }
+
+        int[] offsets = adjacency.getOffsets(), adjacentTriangles = adjacency.getTriangles();
+        float[] normals = new float[3 * getNumVertices()];
+        for (int v = 0; v < getNumVertices(); v++) {
+
+            double normalX = 0, normalY = 0, normalZ = 0;
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                int t = adjacentTriangles[k];
+                normalX += triangleNormals[3 * t];
+                normalY += triangleNormals[3 * t + 1];
+                normalZ += triangleNormals[3 * t + 2];
+            }
+
+            double vectorMag = Math.sqrt((normalX * normalX) + (normalY * normalY) + (normalZ * normalZ));
+            if (vectorMag > 0) {
+                normals[3 * v] = (float) (normalX / vectorMag);
+                normals[3 * v + 1] = (float) (normalY / vectorMag);
+                normals[3 * v + 2] = (float) (normalZ / vectorMag);
+            }
+
+        }
+
+        return normals;
+
+    } // computeVertexNormals().
 
 
     // Getters and Setters:
 
     /**
-     * @return shape.
+     * Normals for Gouraud shading. A face is never changed, so they are computed once, on first request.
+     *
+     * @return Unit normal (x,y,z) of each vertex, in the face's own co-ordinates (not a copy).
+     */
+    public float[] getVertexNormals() {
+
+        if (vertexNormals == null) vertexNormals = computeVertexNormals();
+        return vertexNormals;
+
+    } // getVertexNormals().
+
+    /**
+     * @return Triangles using each vertex (shared between faces with the same mesh).
+     */
+    public MeshAdjacency getAdjacency() {
+        return adjacency;
+    } // getAdjacency().
+
+    /**
+     * @return Position and colour of each unique vertex.
+     */
+    public GeometryStore getGeometry() {
+        return geometry;
+    } // getGeometry().
+
+    /**
+     * @return Three 0-based vertex indices per triangle.
+     */
+    public int[] getIndices() {
+        return indices;
+    } // getIndices().
+
+    /**
+     * @return Number of unique vertices.
      */
-    public ArrayList<Triangle> getFaceData() {
-        return faceData;
-    } // getShape().
+    public int getNumVertices() {
+        return geometry.getNumVertices();
+    } // getNumVertices().
 
     /**
-     * @param faceData Set shape.
+     * @return Number of triangles.
      */
-    public void setFaceData(ArrayList<Triangle> faceData) {
-        this.faceData = faceData;
-    } // setShape().
+    public int getNumTriangles() {
+        return indices.length / 3;
+    } // getNumTriangles().
 
 
 } // Face3D{}.
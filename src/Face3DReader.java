@@ -1,7 +1,15 @@
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
 /**
  * Methods for reading reference faces from data files.
@@ -12,26 +20,113 @@ public class Face3DReader {
 
 
     File dataDir; // Directory containing the data files.
-    ArrayList<Triplet> mesh; // Get the mesh to be used by the reference faces.
-    ArrayList<Triplet> sh000; // Average shape information.
-    ArrayList<Triplet> tx000; // Average color information.
-    ArrayList<Double> shEV; // Shape information weights.
-    ArrayList<Double> txEV;// Color information weights.
+    FaceDataCache dataCache; // Memory-mapped binary data set, or null when reading the CSV files directly.
+    int[] mesh; // Get the mesh to be used by the reference faces. Three 0-based vertex indices per triangle.
+    MeshAdjacency meshAdjacency; // Triangles using each vertex of the mesh, shared by every face.
+    FloatBuffer sh000; // Average shape information.
+    FloatBuffer tx000; // Average color information.
+    FloatBuffer shEV; // Shape information weights.
+    FloatBuffer txEV; // Color information weights.
+
+    FaceBasis basis; // Resident offsets of the reference faces, used for interpolation (null when streaming).
+    boolean streaming; // Whether to stream the offset files on every interpolation, rather than holding them resident.
+    int numFaces; // Number of reference faces used for interpolation.
+    FaceInterpolator interpolator; // Blends the reference faces, reusing the previous result where possible.
+
+    double sparseCoverage = 1; // Fraction of the total weight the blended faces must cover (1 blends every face).
+    float[] shapeOffsetNorms; // Largest per-vertex shape offset length of each face (computed when first needed).
+    float[] colorOffsetNorms; // Largest per-vertex colour offset length of each face (computed when first needed).
+    SparseWeights lastSparseWeights; // Selection and error bounds of the most recent sparse blend, or null.
+
+    // Reference faces already reconstructed, bounded by their estimated size in bytes.
+    static final long REFERENCE_CACHE_BYTES = 256L * 1024 * 1024;
+    final ReferenceFaceCache referenceFaceCache;
 
 
     /**
-     * Constructor:
+     * Constructor: Read the data files directly as CSV, using every face listed in the weight files.
      *
      * @param dataDir Directory containing the data files.
      */
     public Face3DReader(File dataDir) {
+        this(dataDir, -1, false, false);
+    } // Face3DReader().
+
+    /**
+     * Constructor:
+     *
+     * @param dataDir      Directory containing the data files.
+     * @param numFaces     Number of reference faces to load for interpolation (-1 for every face in the weight files).
+     * @param useDataCache Whether to read from the memory-mapped binary cache (rebuilt from the CSV files if stale).
+     * @param streaming    Whether to stream the offset files on each interpolation instead of loading them all up
+     *                     front, so memory use stays proportional to the number of vertices.
+     */
+    public Face3DReader(File dataDir, int numFaces, boolean useDataCache, boolean streaming) {
 
         this.dataDir = dataDir;
-        this.mesh = getMesh(dataDir); // Get the mesh to be used by the reference faces.
-        this.sh000 = getFaceDataFile(dataDir, 0, true); // Average shape information.
-        this.tx000 = getFaceDataFile(dataDir, 0, false); // Average color information.
-        this.shEV = getWeightFile(dataDir, true); // Shape information weights.
-        this.txEV = getWeightFile(dataDir, false); // Color information weights.
+        this.streaming = streaming;
+
+        // A low-memory reader keeps no reconstructed reference faces either.
+        this.referenceFaceCache = new ReferenceFaceCache(streaming ? 0 : REFERENCE_CACHE_BYTES);
+
+        if (useDataCache) {
+            try {
+                this.dataCache = FaceDataCache.open(dataDir);
+            } catch (IOException e) {
+                System.out.println("Face3DReader() Data Cache Unavailable, Reading CSV: " + e.getMessage());
+            }
+        }
+
+        try {
+
+            if (dataCache != null) {
+
+                IntBuffer meshIndices = dataCache.getMesh();
+                this.mesh = new int[meshIndices.remaining()];
+                meshIndices.get(this.mesh); // Get the mesh to be used by the reference faces.
+                this.sh000 = dataCache.getMeanFace(true); // Average shape information.
+                this.tx000 = dataCache.getMeanFace(false); // Average color information.
+                this.shEV = dataCache.getWeights(true); // Shape information weights.
+                this.txEV = dataCache.getWeights(false); // Color information weights.
+
+            } else {
+
+                this.mesh = readMesh(dataDir); // Get the mesh to be used by the reference faces.
+                this.shEV = FloatBuffer.wrap(readWeightFile(dataDir, true)); // Shape information weights.
+                this.txEV = FloatBuffer.wrap(readWeightFile(dataDir, false)); // Color information weights.
+
+                // The two average faces are as large as any reference face, so load them in parallel too.
+                List<float[]> averageFaces = new ParallelFaceLoader(null).load(
+                        List.of(faceFile(dataDir, 0, true), faceFile(dataDir, 0, false)), Face3DReader::parseFaceData);
+                this.sh000 = FloatBuffer.wrap(averageFaces.get(0)); // Average shape information.
+                this.tx000 = FloatBuffer.wrap(averageFaces.get(1)); // Average color information.
+
+            }
+
+            // Every face shares the mesh, so its adjacency is only built once.
+            try {
+                this.meshAdjacency = new MeshAdjacency(mesh, sh000.remaining() / 3);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed mesh: " + e.getMessage(), e);
+            }
+
+            if (numFaces < 0) numFaces = Math.min(shEV.remaining(), txEV.remaining());
+            this.numFaces = numFaces;
+
+            if (streaming) {
+                if (dataCache != null && numFaces > dataCache.getNumFaces()) {
+                    throw new IOException("Data cache only holds " + dataCache.getNumFaces() + " reference faces.");
+                }
+                this.interpolator = new FaceInterpolator(this::streamOffsets, sh000, tx000, numFaces);
+            } else {
+                this.basis = loadBasis(dataDir, numFaces);
+                this.interpolator = new FaceInterpolator(basis, sh000, tx000, numFaces);
+            }
+
+        } catch (IOException e) {
+            System.out.println("Face3DReader() Exception: " + e.getMessage());
+            System.exit(-1);
+        }
 
     } // Face3DReader().
 
@@ -45,86 +140,217 @@ public class Face3DReader {
      * @return Interpolated face.
      */
     public Face3D getInterpolatedFace(ArrayList<Double> interpolationWeights) {
+        return getInterpolatedFace(interpolationWeights, () -> false);
+    } // getInterpolatedFace().
 
-        Face3D interpolatedFace = new Face3D(); // Interpolated face object to return.
+    /**
+     * Given a set of interpolation weights, get the interpolated face, unless cancelled first.
+     *
+     * @param interpolationWeights Weights to use for the interpolation. Order such that i-th weight is for (i + 1)th face file.
+     * @param isCancelled          Polled during the interpolation; once it returns true the interpolation is abandoned.
+     * @return Interpolated face.
+     * @throws CancellationException If the interpolation was cancelled.
+     */
+    public Face3D getInterpolatedFace(ArrayList<Double> interpolationWeights, BooleanSupplier isCancelled) {
 
-        int numReferenceFaces = interpolationWeights.size(); // Number of reference faces to interpolate over.
+        double[] weights = new double[Math.min(interpolationWeights.size(), numFaces)];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = interpolationWeights.get(i);
+        }
 
-        // For every reference face...
-        for (int currRefFaceIndex = 0; currRefFaceIndex < numReferenceFaces; currRefFaceIndex++) {
+        // Optionally drop the faces that contribute least, so the blend only touches the k faces that remain.
+        if (sparseCoverage < 1) {
+            lastSparseWeights = selectSparseWeights(weights);
+            weights = lastSparseWeights.getWeights();
+        } else {
+            lastSparseWeights = null;
+        }
 
-            Double shEVWeight = shEV.get(currRefFaceIndex); // Get weight at faceNum-th line, w.
-            Double txEVWeight = txEV.get(currRefFaceIndex); // Get weight at faceNum-th line, w.
-            // Get reference face for current face (currRefFaceIndex + 1).
-            Face3D face3D = getReferenceFace(dataDir, currRefFaceIndex + 1, mesh, sh000, tx000, shEVWeight, txEVWeight);
+        // mean + sum(w_i * ev_i * offset_i) for every vertex component, applying only the change since last time.
+        // Each face gets its own store, so the result can be rendered while the next one is interpolated.
+        GeometryStore geometry = new GeometryStore(sh000.remaining() / 3);
+        interpolator.interpolate(weights, geometry, isCancelled);
 
-            // Interpolation weight for this reference face.
-            Double currInterpolationWeight = interpolationWeights.get(currRefFaceIndex);
+        return new Face3D(geometry, mesh, meshAdjacency);
 
-            // For every triangle, get the required percentages of co-ordinates and colors for current interpolation weight.
-            for (int currTriangleIndex = 0; currTriangleIndex < mesh.size(); currTriangleIndex++) {
+    } // getInterpolatedFace().
 
-                Triangle currTriangle = face3D.getFaceData().get(currTriangleIndex);
+    /**
+     * Choose the fewest faces covering sparseCoverage of the total weight, along with the worst-case deviation.
+     *
+     * @param weights Exact interpolation weights, where index i is the weight of face (i + 1).
+     * @return Renormalised sparse weights and their error bounds.
+     */
+    private SparseWeights selectSparseWeights(double[] weights) {
 
-                // Interpolating point 1.
-                Point3D interpolatedPoint1 = new Point3D(
-                        currInterpolationWeight * currTriangle.getPoint1().getX(),
-                        currInterpolationWeight * currTriangle.getPoint1().getY(),
-                        currInterpolationWeight * currTriangle.getPoint1().getZ());
+        loadOffsetNorms();
 
-                // Interpolating point1Color.
-                Triplet interpolatedPoint1Color = new Triplet(
-                        currInterpolationWeight * currTriangle.getPoint1ColorT().getFirst(), // R.
-                        currInterpolationWeight * currTriangle.getPoint1ColorT().getSecond(), // G.
-                        currInterpolationWeight * currTriangle.getPoint1ColorT().getThird()); // B.
+        float[] shapeWeights = new float[numFaces];
+        float[] colorWeights = new float[numFaces];
+        shEV.get(0, shapeWeights);
+        txEV.get(0, colorWeights);
 
-                // Interpolating point 2.
-                Point3D interpolatedPoint2 = new Point3D(
-                        currInterpolationWeight * currTriangle.getPoint2().getX(),
-                        currInterpolationWeight * currTriangle.getPoint2().getY(),
-                        currInterpolationWeight * currTriangle.getPoint2().getZ());
+        return SparseWeights.select(weights, sparseCoverage, shapeWeights, colorWeights,
+                shapeOffsetNorms, colorOffsetNorms);
 
-                // Interpolating point2Color.
-                Triplet interpolatedPoint2Color = new Triplet(
-                        currInterpolationWeight * currTriangle.getPoint2ColorT().getFirst(), // R.
-                        currInterpolationWeight * currTriangle.getPoint2ColorT().getSecond(), // G.
-                        currInterpolationWeight * currTriangle.getPoint2ColorT().getThird()); // B.
+    } // selectSparseWeights().
 
-                // Interpolating point 3.
-                Point3D interpolatedPoint3 = new Point3D(
-                        currInterpolationWeight * currTriangle.getPoint3().getX(),
-                        currInterpolationWeight * currTriangle.getPoint3().getY(),
-                        currInterpolationWeight * currTriangle.getPoint3().getZ());
+    /**
+     * Worst-case per-vertex distance between the blends of two weight vectors with the same total (so the mean face
+     * terms cancel): sum over i of |a_i - b_i| * |ev_i| * M_i, where M_i is the largest per-vertex offset length of
+     * face i.
+     *
+     * @param weightsA First interpolation weights, where index i is the weight of face (i + 1).
+     * @param weightsB Second interpolation weights, with the same total as the first.
+     * @return Bounds on the shape distance (element 0), and the colour distance (element 1).
+     */
+    public double[] getWeightErrorBounds(double[] weightsA, double[] weightsB) {
 
-                // Interpolating point3Color.
-                Triplet interpolatedPoint3Color = new Triplet(
-                        currInterpolationWeight * currTriangle.getPoint3ColorT().getFirst(), // R.
-                        currInterpolationWeight * currTriangle.getPoint3ColorT().getSecond(), // G.
-                        currInterpolationWeight * currTriangle.getPoint3ColorT().getThird()); // B.
+        loadOffsetNorms();
 
-                // If current face is 0th, then add triangle to interpolatedFace, otherwise update existing triangles.
-                if (currRefFaceIndex == 0) { // If first face, add triangle to the set of triangles comprising face.
+        double shapeErrorBound = 0, colorErrorBound = 0;
+        for (int i = 0; i < Math.min(numFaces, Math.min(weightsA.length, weightsB.length)); i++) {
+            double error = Math.abs(weightsA[i] - weightsB[i]);
+            shapeErrorBound += error * Math.abs(shEV.get(i)) * shapeOffsetNorms[i];
+            colorErrorBound += error * Math.abs(txEV.get(i)) * colorOffsetNorms[i];
+        }
 
-                    Triangle newTriangle = new Triangle(interpolatedPoint1, interpolatedPoint2, interpolatedPoint3);
-                    newTriangle.setColorTs(interpolatedPoint1Color, interpolatedPoint2Color, interpolatedPoint3Color);
-                    interpolatedFace.addTriangle(newTriangle);
+        return new double[]{shapeErrorBound, colorErrorBound};
 
-                } else { // For every other face, we want to add to the existing co-ordinates and colors.
+    } // getWeightErrorBounds().
 
-                    // Update existing triangle.
-                    Triangle currInterpolatedTriangle = interpolatedFace.getTriangle(currTriangleIndex);
-                    currInterpolatedTriangle.updatePoints(interpolatedPoint1, interpolatedPoint2, interpolatedPoint3);
-                    currInterpolatedTriangle.updateColors(interpolatedPoint1Color, interpolatedPoint2Color, interpolatedPoint3Color);
+    /**
+     * Find the largest per-vertex offset length of each face, if not already known.
+     */
+    private void loadOffsetNorms() {
 
-                }
+        if (shapeOffsetNorms != null) return;
 
-            } // for (every triangle).
+        if (basis != null) {
+            shapeOffsetNorms = basis.getOffsetNorms(true);
+            colorOffsetNorms = basis.getOffsetNorms(false);
+        } else {
+            // Nothing is resident in the low-memory mode, so make one sequential pass over the offset files (only
+            // keeping the norms once every face has been read, so a failed pass is retried next time).
+            float[] shapeNorms = new float[numFaces];
+            float[] colorNorms = new float[numFaces];
+            for (int faceNum = 1; faceNum <= numFaces; faceNum++) {
+                shapeNorms[faceNum - 1] = FaceBasis.maxVertexLength(getFaceData(dataDir, faceNum, true));
+                colorNorms[faceNum - 1] = FaceBasis.maxVertexLength(getFaceData(dataDir, faceNum, false));
+            }
+            colorOffsetNorms = colorNorms;
+            shapeOffsetNorms = shapeNorms; // Set last, as it marks the norms as known.
+        }
 
-        } // for (every reference face).
+    } // loadOffsetNorms().
 
-        return interpolatedFace;
+    /**
+     * Offset source for the low-memory mode: each requested face's offset files are read, added straight into the
+     * sums, and released before the next face is read, so at most one face's offsets are live at a time.
+     *
+     * @param faces        Indices of the faces to add (i.e., face number - 1), in ascending order.
+     * @param weightDeltas Interpolation weight to add for each face, parallel to faces.
+     * @param count        Number of faces to add.
+     * @param shapeSums    Running shape sums, x,y,z per vertex.
+     * @param colorSums    Running colour sums, r,g,b per vertex.
+     * @param isCancelled  Polled before each face is read; once it returns true, stop.
+     * @throws CancellationException If stopped because isCancelled returned true.
+     * @throws UncheckedIOException  If the offsets of a face could not be read.
+     */
+    private void streamOffsets(int[] faces, double[] weightDeltas, int count, double[] shapeSums, double[] colorSums,
+                               BooleanSupplier isCancelled) {
 
-    } // getInterpolatedFace().
+        for (int j = 0; j < count; j++) {
+
+            if (isCancelled.getAsBoolean()) throw new CancellationException("Blend cancelled at face " + (j + 1) + ".");
+
+            int faceNum = faces[j] + 1;
+            accumulate(shapeSums, getFaceData(dataDir, faceNum, true), weightDeltas[j] * shEV.get(faceNum - 1));
+            accumulate(colorSums, getFaceData(dataDir, faceNum, false), weightDeltas[j] * txEV.get(faceNum - 1));
+
+        }
+
+    } // streamOffsets().
+
+    /**
+     * @param accumulator Running sum to add to.
+     * @param offsets     Offsets of one reference face.
+     * @param coefficient Interpolation weight multiplied by the face's EV weight.
+     * @throws UncheckedIOException If the offsets do not hold one value per element of the sum.
+     */
+    private static void accumulate(double[] accumulator, FloatBuffer offsets, double coefficient) {
+
+        if (offsets.remaining() != accumulator.length) {
+            throw new UncheckedIOException(new IOException("Vertex count mismatch in reference face offsets."));
+        }
+
+        for (int k = 0; k < accumulator.length; k++) accumulator[k] += coefficient * offsets.get(k);
+
+    } // accumulate().
+
+    /**
+     * Load the mean face and the offsets of the first numFaces reference faces into a resident basis.
+     *
+     * @param dataDir  Directory containing the data files.
+     * @param numFaces Number of reference faces to load.
+     * @return Basis holding the loaded faces.
+     * @throws IOException If any of the face data files cannot be read.
+     */
+    private FaceBasis loadBasis(File dataDir, int numFaces) throws IOException {
+
+        if (dataCache != null && numFaces > dataCache.getNumFaces()) {
+            throw new IOException("Data cache only holds " + dataCache.getNumFaces() + " reference faces.");
+        }
+
+        int numVertices = sh000.remaining() / 3;
+        FaceBasis faceBasis = new FaceBasis(numVertices, numFaces);
+        faceBasis.setWeights(shEV, txEV);
+
+        if (dataCache != null) {
+
+            // Already parsed, so simply copy out of the mapped file.
+            for (int faceNum = 1; faceNum <= numFaces; faceNum++) {
+                faceBasis.setOffsets(faceNum - 1, true, dataCache.getOffsets(faceNum, true));
+                faceBasis.setOffsets(faceNum - 1, false, dataCache.getOffsets(faceNum, false));
+            }
+
+        } else {
+
+            // Files ordered sh_001 to sh_00n, then tx_001 to tx_00n.
+            List<File> offsetFiles = new ArrayList<>(2 * numFaces);
+            for (int faceNum = 1; faceNum <= numFaces; faceNum++) offsetFiles.add(faceFile(dataDir, faceNum, true));
+            for (int faceNum = 1; faceNum <= numFaces; faceNum++) offsetFiles.add(faceFile(dataDir, faceNum, false));
+
+            ParallelFaceLoader loader = new ParallelFaceLoader(Face3DReader::printLoadProgress);
+            ParallelFaceLoader.FileParser<float[]> parser = (file, contents) -> {
+                float[] offsets = parseFaceData(file, contents);
+                if (offsets.length != 3 * numVertices) throw new IOException("Vertex count mismatch in " + file);
+                return offsets;
+            };
+
+            // Each file fills its own slots of the basis, so results can be stored as they arrive.
+            loader.load(offsetFiles, parser,
+                    (index, offsets) -> faceBasis.setOffsets(index % numFaces, index < numFaces, FloatBuffer.wrap(offsets)));
+
+        }
+
+        return faceBasis;
+
+    } // loadBasis().
+
+    /**
+     * Report reference face loading progress on the console, every 10% of files.
+     *
+     * @param completed Number of files loaded so far.
+     * @param total     Total number of files being loaded.
+     */
+    private static void printLoadProgress(int completed, int total) {
+
+        if ((completed * 10) / total != ((completed - 1) * 10) / total) {
+            System.out.println("Loading reference faces: " + completed + "/" + total + " files.");
+        }
+
+    } // printLoadProgress().
 
     /**
      * Get a given reference face using a specified face number and mesh.
@@ -134,12 +360,20 @@ public class Face3DReader {
      */
     public Face3D getReferenceFace(int faceNum) {
 
-        Double shEVWeight = shEV.get(faceNum - 1); // Get weight at faceNum-th line, w.
-        Double txEVWeight = txEV.get(faceNum - 1); // Get weight at faceNum-th line, w.
+        // Only reconstruct the face if it is not already cached.
+        Face3D face3D = referenceFaceCache.get(faceNum);
+        if (face3D == null) {
 
-        // Get shape and color information for the reference face.
-        Face3D face3D = getReferenceFace(dataDir, faceNum, mesh, sh000, tx000, shEVWeight, txEVWeight);
-        return face3D;
+            double shEVWeight = shEV.get(faceNum - 1); // Get weight at faceNum-th line, w.
+            double txEVWeight = txEV.get(faceNum - 1); // Get weight at faceNum-th line, w.
+
+            // Get shape and color information for the reference face.
+            face3D = getReferenceFace(dataDir, faceNum, mesh, sh000, tx000, shEVWeight, txEVWeight);
+            referenceFaceCache.put(faceNum, face3D);
+
+        }
+
+        return face3D; // Faces are never changed, so the cached instance can be shared.
 
     } // getReferenceFace().
 
@@ -155,141 +389,90 @@ public class Face3DReader {
      * @param txEVWeight Colour weight to use for current faceNum.
      * @return Face3D object, which contains the shape and color information of the reference face.
      */
-    private Face3D getReferenceFace(File dataDir, int faceNum, ArrayList<Triplet> mesh,
-                                    ArrayList<Triplet> sh000, ArrayList<Triplet> tx000,
-                                    Double shEVWeight, Double txEVWeight) {
+    private Face3D getReferenceFace(File dataDir, int faceNum, int[] mesh,
+                                    FloatBuffer sh000, FloatBuffer tx000,
+                                    double shEVWeight, double txEVWeight) {
 
-        // Get shape and color information for the reference face.
-        ArrayList<Triangle> faceWShapeData = getReferenceFaceShape(dataDir, faceNum, mesh, sh000, shEVWeight);
-        getReferenceFaceColor(dataDir, faceNum, mesh, tx000, txEVWeight, faceWShapeData);
+        // Get shape and color information for every vertex of the reference face.
+        GeometryStore geometry = new GeometryStore(sh000.remaining() / 3);
+        getReferenceFaceData(dataDir, faceNum, sh000, shEVWeight, true, geometry);
+        getReferenceFaceData(dataDir, faceNum, tx000, txEVWeight, false, geometry);
 
-        // Add to the set of reference faces.
-        Face3D face3D = new Face3D(faceWShapeData);
-        return face3D;
+        return new Face3D(geometry, mesh, meshAdjacency);
 
     } // getReferenceFace().
 
     /**
-     * Get the color information for a given face from the corresponding CSV files:
+     * Get the shape or colour information for every vertex of a given face from the corresponding data files:
+     * <p>
+     * "The n-th face will have the 3D coordinates of its vertices computed by adding the coordinates in sh_000.csv
+     * (the average face shape) summed with the coordinate offsets in sh_00n.csv multiplied by the n-th weight in
+     * sh_EV.csv".
      * <p>
      * "The corresponding colours are similarly computed by adding the colours in tx_000.csv (the average face colour)
      * summed with the colour offsets in tx_00n.csv multiplied by the n-th weight in tx EV.csv."
      *
-     * @param dataDir        Directory containing the data files.
-     * @param faceNum        Number of the face to get shape data for (i.e., 1 through to 199 inclusive).
-     * @param mesh           Mesh used to define the shape and color information.
-     * @param tx000          Average color information.
-     * @param weight         Color weight associated with the current face.
-     * @param faceWShapeData Face to update with color information (should already have shape info but not relevant).
+     * @param dataDir Directory containing the data files.
+     * @param faceNum Number of the face to get data for (i.e., 1 through to 199 inclusive).
+     * @param mean    Average shape (or colour) information.
+     * @param weight  Shape (or colour) weight associated with the current face.
+     * @param shape   Whether getting shape data (true), or color data (false).
+     * @param out     Store receiving x,y,z (or r,g,b) for every vertex.
      */
-    private void getReferenceFaceColor(File dataDir, int faceNum, ArrayList<Triplet> mesh,
-                                       ArrayList<Triplet> tx000, Double weight,
-                                       ArrayList<Triangle> faceWShapeData) {
-
-        ArrayList<Triplet> tx00n = getFaceDataFile(dataDir, faceNum, false); // Color information offsets.
-
-        int currTriangleTripletIndex = 0;
-        // For every triangle (as indices) specified in the mesh.
-        for (Triplet currTriangleTriplet : mesh) {
-
-            int firstPointIndex = (int) currTriangleTriplet.getFirst() - 1; // i1
-            Triplet currAverageFacePoint1 = tx000.get(firstPointIndex); // av1.
-            Triplet currOffsets1 = tx00n.get(firstPointIndex); // off1.
-            Triplet triangleColor1 = new Triplet(
-                    currAverageFacePoint1.getFirst() + currOffsets1.getFirst() * weight, // R.
-                    currAverageFacePoint1.getSecond() + currOffsets1.getSecond() * weight, // G.
-                    currAverageFacePoint1.getThird() + currOffsets1.getThird() * weight); // B.
-
-            int secondPointIndex = (int) currTriangleTriplet.getSecond() - 1; // i2.
-            Triplet currAverageFacePoint2 = tx000.get(secondPointIndex); // av2.
-            Triplet currOffsets2 = tx00n.get(secondPointIndex); // off2.
-            Triplet triangleColor2 = new Triplet(
-                    currAverageFacePoint2.getFirst() + currOffsets2.getFirst() * weight, // R.
-                    currAverageFacePoint2.getSecond() + currOffsets2.getSecond() * weight, // G.
-                    currAverageFacePoint2.getThird() + currOffsets2.getThird() * weight); // B.
-
-            int thirdPointIndex = (int) currTriangleTriplet.getThird() - 1; // i3.
-            Triplet currAverageFacePoint3 = tx000.get(thirdPointIndex); // av3.
-            Triplet currOffsets3 = tx00n.get(thirdPointIndex); // off3.
-            Triplet triangleColor3 = new Triplet(
-                    currAverageFacePoint3.getFirst() + currOffsets3.getFirst() * weight, // R.
-                    currAverageFacePoint3.getSecond() + currOffsets3.getSecond() * weight, // G.
-                    currAverageFacePoint3.getThird() + currOffsets3.getThird() * weight); // B.
-
-            faceWShapeData.get(currTriangleTripletIndex).setPoint1Color(triangleColor1);
-            faceWShapeData.get(currTriangleTripletIndex).setPoint2Color(triangleColor2);
-            faceWShapeData.get(currTriangleTripletIndex).setPoint3Color(triangleColor3);
-
-            currTriangleTripletIndex += 1;
+    private void getReferenceFaceData(File dataDir, int faceNum, FloatBuffer mean, double weight, boolean shape,
+                                      GeometryStore out) {
 
-        }
+        FloatBuffer offsets = getFaceData(dataDir, faceNum, shape); // Shape or colour information offsets.
 
-        // Note that the ordering of triangles in the array list equals the ordering indexed by the mesh.
-        //return faceWShapeData; // Already changes by reference.
+        float[] first = shape ? out.getX() : out.getR();
+        float[] second = shape ? out.getY() : out.getG();
+        float[] third = shape ? out.getZ() : out.getB();
 
-    } // getReferenceFaceColor().
+        // p = (av.x + off.x * w, av.y + off.y * w, av.z + off.z * w), once per vertex rather than per triangle corner.
+        for (int v = 0; v < out.getNumVertices(); v++) {
+            int k = 3 * v;
+            first[v] = (float) (mean.get(k) + offsets.get(k) * weight);
+            second[v] = (float) (mean.get(k + 1) + offsets.get(k + 1) * weight);
+            third[v] = (float) (mean.get(k + 2) + offsets.get(k + 2) * weight);
+        }
+
+    } // getReferenceFaceData().
 
     /**
-     * Get the shape information for a given face from the corresponding CSV files:
-     * <p>
-     * "The n-th face will have the 3D coordinates of its vertices computed by adding the coordinates in sh_000.csv
-     * (the average face shape) summed with the coordinate offsets in sh_00n.csv multiplied by the n-th weight in
-     * sh_EV.csv".
+     * Get the offsets for a face - from the memory-mapped cache when available, otherwise from the CSV file.
      *
      * @param dataDir Directory containing the data files.
-     * @param faceNum Number of the face to get shape data for (i.e., 1 through to 199 inclusive).
-     * @param mesh    Mesh used to define the shape and color information.
-     * @param sh000   Average shape information.
-     * @param weight  Shape weight associated with the current face.
-     * @return Array list of triangles representing the shape information of the given face number.
+     * @param faceNum Number of the face to get shape/color data for (i.e., 1 through to 199 inclusive).
+     * @param shape   Whether getting shape data (true), or color data (false).
+     * @return Buffer of x,y,z (or r,g,b) values per vertex.
+     * @throws UncheckedIOException If the CSV file could not be read - faces are read on the render worker, which
+     *                              reports the error and carries on without the face.
      */
-    private ArrayList<Triangle> getReferenceFaceShape(File dataDir, int faceNum, ArrayList<Triplet> mesh,
-                                                      ArrayList<Triplet> sh000, Double weight) {
-
-        ArrayList<Triangle> shapeData = new ArrayList<>();
-
-        ArrayList<Triplet> sh00n = getFaceDataFile(dataDir, faceNum, true); // Shape information offsets.
-
-        // For every triangle (as indices) specified in the mesh.
-        for (Triplet currTriangleTriplet : mesh) {
-
-            int firstPointIndex = (int) currTriangleTriplet.getFirst() - 1; // i1
-            Triplet currAverageFacePoint1 = sh000.get(firstPointIndex); // av1.
-            Triplet currOffsets1 = sh00n.get(firstPointIndex); // off1.
-            // p1 = ((av1.x + off1.x) * w, (av1.y + off1.y) * w, (av1.z + off1.z) * w).
-            Point3D trianglePoint1 = new Point3D(
-                    currAverageFacePoint1.getFirst() + currOffsets1.getFirst() * weight, // x.
-                    currAverageFacePoint1.getSecond() + currOffsets1.getSecond() * weight, // y.
-                    currAverageFacePoint1.getThird() + currOffsets1.getThird() * weight); // z.
-
-            int secondPointIndex = (int) currTriangleTriplet.getSecond() - 1; // i2.
-            Triplet currAverageFacePoint2 = sh000.get(secondPointIndex); // av2.
-            Triplet currOffsets2 = sh00n.get(secondPointIndex); // off2.
-            // p2 = ((av2.x + off2.x) * w, (av2.y + off2.y) * w, (av2.z + off2.z) * w).
-            Point3D trianglePoint2 = new Point3D(
-                    currAverageFacePoint2.getFirst() + currOffsets2.getFirst() * weight, // x.
-                    currAverageFacePoint2.getSecond() + currOffsets2.getSecond() * weight, // y.
-                    currAverageFacePoint2.getThird() + currOffsets2.getThird() * weight); // z.
-
-            int thirdPointIndex = (int) currTriangleTriplet.getThird() - 1; // i3.
-            Triplet currAverageFacePoint3 = sh000.get(thirdPointIndex); // av3.
-            Triplet currOffsets3 = sh00n.get(thirdPointIndex); // off3.
-            // p3 = ((av3.x + off3.x) * w, (av3.y + off3.y) * w, (av3.z + off3.z) * w).
-            Point3D trianglePoint3 = new Point3D(
-                    currAverageFacePoint3.getFirst() + currOffsets3.getFirst() * weight, // x.
-                    currAverageFacePoint3.getSecond() + currOffsets3.getSecond() * weight, // y.
-                    currAverageFacePoint3.getThird() + currOffsets3.getThird() * weight); // z.
-
-            // Create new triangle of 3D points using: p1, p2, and p3.
-            Triangle newTriangle = new Triangle(trianglePoint1, trianglePoint2, trianglePoint3);
-            shapeData.add(newTriangle); // Add triangle to shape data.
+    private FloatBuffer getFaceData(File dataDir, int faceNum, boolean shape) {
+
+        if (dataCache != null) return dataCache.getOffsets(faceNum, shape);
 
+        try {
+            return FloatBuffer.wrap(readFaceDataFile(dataDir, faceNum, shape));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
 
-        // Note that the ordering of triangles in the array list equals the ordering indexed by the mesh.
-        return shapeData;
+    } // getFaceData().
 
-    } // getReferenceFaceShape().
+    /**
+     * @param dataDir Directory containing the data files.
+     * @param faceNum Number of the face (0 for the average face).
+     * @param shape   Whether the shape file (true), or the colour file (false).
+     * @return File holding the requested face data.
+     */
+    static File faceFile(File dataDir, int faceNum, boolean shape) {
+
+        // Get face number prefix correctly, which is padded with zeroes when required.
+        String numSuffix = String.format("%03d", faceNum);
+        return new File(dataDir, (shape ? "sh_" : "tx_") + numSuffix + ".csv");
+
+    } // faceFile().
 
     /**
      * Read in a face data file - either shape or color information.
@@ -297,130 +480,133 @@ public class Face3DReader {
      * @param dataDir Directory containing the data files.
      * @param faceNum Number of the face to get shape/color data for (i.e., 1 through to 199 inclusive).
      * @param shape   Whether getting shape data (true), or color data (false).
-     * @return Array list of triplets which represent the data retrieved from the file in CSV format.
+     * @return Array of x,y,z (or r,g,b) values per vertex, in the order read from the CSV file.
+     * @throws IOException If the file cannot be read or parsed.
      */
-    private ArrayList<Triplet> getFaceDataFile(File dataDir, int faceNum, boolean shape) {
-
-        // Face shape/color data structure.
-        ArrayList<Triplet> faceData = new ArrayList<>();
-
-        // Get face number prefix correctly, which is padded with zeroes when required.
-        String numSuffix = String.format("%03d", faceNum);
+    static float[] readFaceDataFile(File dataDir, int faceNum, boolean shape) throws IOException {
 
         // Get correct face data file name according to whether shape or color data is specified.
-        String faceFileName;
-        if (shape) {
-            faceFileName = dataDir.getAbsolutePath() + "/sh_" + numSuffix + ".csv";
-        } else {
-            faceFileName = dataDir.getAbsolutePath() + "/tx_" + numSuffix + ".csv";
-        }
-
-        // Read every line from the CSV file.
-        try (BufferedReader meshReader = new BufferedReader(new FileReader(faceFileName))) {
-
-            String line;
-            while ((line = meshReader.readLine()) != null) {
+        File faceFile = faceFile(dataDir, faceNum, shape);
+        return parseFaceData(faceFile, mapFile(faceFile));
 
-                String[] values = line.split(",");
+    } // readFaceDataFile().
 
-                // Each line of the file contains a triple: x,y,z for shape data file - r,g,b for color data file.
-                double firstIndex = Double.parseDouble(values[0]);
-                double secondIndex = Double.parseDouble(values[1]);
-                double thirdIndex = Double.parseDouble(values[2]);
-
-                // Add triplet from the data file to the structure in order read.
-                Triplet currTriangleIndices = new Triplet(firstIndex, secondIndex, thirdIndex);
-                faceData.add(currTriangleIndices);
-
-            }
+    /**
+     * Parse the contents of a face data file - either shape or color information.
+     *
+     * @param faceFile File the contents were read from.
+     * @param contents Contents of the CSV file.
+     * @return Array of x,y,z (or r,g,b) values per vertex, in the order read from the CSV file.
+     * @throws IOException If the contents cannot be parsed.
+     */
+    static float[] parseFaceData(File faceFile, ByteBuffer contents) throws IOException {
 
-        } catch (Exception e) {
-            System.out.println("P2main.getFaceDataFile() Exception: " + e.getMessage());
-            System.exit(-1);
+        // Each line of the file contains a triple: x,y,z for shape data file - r,g,b for color data file.
+        try {
+            return CsvNumberParser.parseFloats(contents, 3);
+        } catch (IOException e) {
+            throw new IOException("Malformed face data file " + faceFile + ": " + e.getMessage(), e);
         }
 
-        return faceData;
-
-    } // getFaceDataFile().
+    } // parseFaceData().
 
     /**
      * Read in a weight file from CSV.
      *
      * @param dataDir Directory of data containing the weight file (for shape and color).
      * @param shape   Whether getting the shape weight file (sh_ev.csv) or the color file (tx_ev.csv).
-     * @return Array list of double representing the weights.
+     * @return Array of weights, in the order read from the CSV file.
+     * @throws IOException If the file cannot be read or parsed.
      */
-    private ArrayList<Double> getWeightFile(File dataDir, boolean shape) {
-
-        // List fo weights retrieved from the file to return.
-        ArrayList<Double> weights = new ArrayList<>();
+    static float[] readWeightFile(File dataDir, boolean shape) throws IOException {
 
         // Get weight file name according to type of weight data file requested.
-        String weightFileName;
-        if (shape) {
-            weightFileName = dataDir.getAbsolutePath() + "/sh_ev.csv";
-        } else {
-            weightFileName = dataDir.getAbsolutePath() + "/tx_ev.csv";
-        }
+        File weightFile = new File(dataDir, shape ? "sh_ev.csv" : "tx_ev.csv");
 
-        // Read every line from the CSV file.
-        try (BufferedReader meshReader = new BufferedReader(new FileReader(weightFileName))) {
+        // Each line of the file contains a single weight.
+        try {
+            return CsvNumberParser.parseFloats(mapFile(weightFile), 1);
+        } catch (IOException e) {
+            throw new IOException("Malformed weight file " + weightFile + ": " + e.getMessage(), e);
+        }
 
-            String line;
-            while ((line = meshReader.readLine()) != null) {
+    } // readWeightFile().
 
-                // Save weights in order read to the weights data structure.
-                double weight = Double.parseDouble(line);
-                weights.add(weight);
+    /**
+     * Read the mesh from file.
+     *
+     * @param dataDir Directory (File object) containing all of the needed data, namely the mesh data file.
+     * @return Array of 0-based vertex indices, three per triangle.
+     * @throws IOException If the file cannot be read or parsed.
+     */
+    static int[] readMesh(File dataDir) throws IOException {
 
-            }
+        File meshFile = new File(dataDir, "mesh.csv"); // Get mesh file given the data directory.
 
-        } catch (Exception e) {
-            System.out.println("P2main.getWeightFile() Exception: " + e.getMessage());
-            System.exit(-1);
+        // Each line of the mesh contains three (1-based) indices representing a triangle.
+        int[] mesh;
+        try {
+            mesh = CsvNumberParser.parseInts(mapFile(meshFile), 3);
+        } catch (IOException e) {
+            throw new IOException("Malformed mesh file " + meshFile + ": " + e.getMessage(), e);
         }
 
-        return weights;
+        for (int i = 0; i < mesh.length; i++) mesh[i]--;
+        return mesh;
 
-    } // getWeightFile().
+    } // readMesh().
 
     /**
-     * Read the mesh from file.
+     * Map a whole file into memory for parsing.
      *
-     * @param dataDir Directory (File object) containing all of the needed data, namely the mesh data file.
-     * @return List of tuple representing the mesh.
+     * @param file File to map.
+     * @return Read-only buffer over the contents of the file.
+     * @throws IOException If the file cannot be opened or mapped.
      */
-    private ArrayList<Triplet> getMesh(File dataDir) {
-
-        ArrayList<Triplet> mesh = new ArrayList<>(); // Mesh to populate and return.
-        String meshFileName = dataDir.getAbsolutePath() + "/mesh.csv"; // Get mesh file given the data directory.
-
-        // Read every line from the CSV file and get the resulting mesh.
-        try (BufferedReader meshReader = new BufferedReader(new FileReader(meshFileName))) {
+    static ByteBuffer mapFile(File file) throws IOException {
 
-            String line;
-            while ((line = meshReader.readLine()) != null) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
 
-                String[] currIndices = line.split(","); // CSV file.
+    } // mapFile().
 
-                // Each line of the mesh contains three indices representing a triangle.
-                double firstIndex = Double.parseDouble(currIndices[0]);
-                double secondIndex = Double.parseDouble(currIndices[1]);
-                double thirdIndex = Double.parseDouble(currIndices[2]);
+    // Getters and Setters:
 
-                Triplet currTriangleIndices = new Triplet(firstIndex, secondIndex, thirdIndex);
-                mesh.add(currTriangleIndices);
+    /**
+     * @return Cache of reconstructed reference faces (for its hit/miss/eviction counters).
+     */
+    public ReferenceFaceCache getReferenceFaceCache() {
+        return referenceFaceCache;
+    } // getReferenceFaceCache().
 
-            }
+    /**
+     * @return sparseCoverage.
+     */
+    public double getSparseCoverage() {
+        return sparseCoverage;
+    } // getSparseCoverage().
 
-        } catch (Exception e) {
-            System.out.println("P2main.getMesh() Exception: " + e.getMessage());
-            System.exit(-1);
-        }
+    /**
+     * @param sparseCoverage Fraction of the total weight the blended faces must cover (1 blends every face).
+     */
+    public void setSparseCoverage(double sparseCoverage) {
+        this.sparseCoverage = Math.min(1, Math.max(0, sparseCoverage));
+    } // setSparseCoverage().
 
-        return mesh;
+    /**
+     * @return Selection and error bounds of the most recent sparse blend, or null if it blended every face.
+     */
+    public SparseWeights getLastSparseWeights() {
+        return lastSparseWeights;
+    } // getLastSparseWeights().
 
-    } // getMesh().
+    /**
+     * @return interpolator.
+     */
+    public FaceInterpolator getInterpolator() {
+        return interpolator;
+    } // getInterpolator().
 
 
 } // Face3DReader{}.
@@ -0,0 +1,260 @@
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Resident basis of reference faces held in contiguous primitive arrays, so that interpolation is a single fused
+ * weighted sum per vertex component:
+ * <p>
+ * sums += sum over i of (w_i * ev_i) * offset_i
+ * <p>
+ * Offsets are stored vertex-major - all faces' offsets for vertex v are adjacent - so accumulating streams through
+ * the arrays exactly once.
+ *
+ * @author 170004680
+ */
+public class FaceBasis implements FaceInterpolator.OffsetSource {
+
+
+    private static final int CANCEL_CHECK_VERTICES = 4096; // Vertices accumulated between checks for cancellation.
+    private static final long PARALLEL_MIN_WORK = 1L << 20; // Face-vertices worth splitting across threads.
+
+    private final int numVertices; // Number of vertices in every face.
+    private final int numFaces; // Number of reference faces in the basis.
+
+    private final float[] shapeOffsets; // Shape offsets, indexed [(vertex * numFaces + face) * 3 + component].
+    private final float[] colorOffsets; // Colour offsets, indexed [(vertex * numFaces + face) * 3 + component].
+    private final float[] shapeWeights; // Shape weight (sh_ev) of each face.
+    private final float[] colorWeights; // Colour weight (tx_ev) of each face.
+    private final float[] shapeOffsetNorms; // Largest per-vertex shape offset length of each face.
+    private final float[] colorOffsetNorms; // Largest per-vertex colour offset length of each face.
+
+
+    /**
+     * Constructor: Allocate an empty basis, to be filled with setWeights() and setOffsets().
+     *
+     * @param numVertices Number of vertices in every face.
+     * @param numFaces    Number of reference faces in the basis.
+     */
+    public FaceBasis(int numVertices, int numFaces) {
+
+        this.numVertices = numVertices;
+        this.numFaces = numFaces;
+
+        this.shapeOffsets = new float[3 * numVertices * numFaces];
+        this.colorOffsets = new float[3 * numVertices * numFaces];
+        this.shapeWeights = new float[numFaces];
+        this.colorWeights = new float[numFaces];
+        this.shapeOffsetNorms = new float[numFaces];
+        this.colorOffsetNorms = new float[numFaces];
+
+    } // FaceBasis().
+
+    // Utility Functions:
+
+    /**
+     * @param shapeWeights Shape weight (sh_ev) of each face, in face order.
+     * @param colorWeights Colour weight (tx_ev) of each face, in face order.
+     */
+    public void setWeights(FloatBuffer shapeWeights, FloatBuffer colorWeights) {
+
+        shapeWeights.get(0, this.shapeWeights);
+        colorWeights.get(0, this.colorWeights);
+
+    } // setWeights().
+
+    /**
+     * Store the shape or colour offsets of a reference face, transposing them into the vertex-major layout.
+     * Calls for different faces write disjoint elements, so they may run concurrently.
+     *
+     * @param faceIndex Index of the face (i.e., face number - 1).
+     * @param shape     Whether these are shape offsets (sh_00n), or colour offsets (tx_00n).
+     * @param offsets   x,y,z (or r,g,b) offsets per vertex.
+     */
+    public void setOffsets(int faceIndex, boolean shape, FloatBuffer offsets) {
+
+        float[] basisOffsets = shape ? shapeOffsets : colorOffsets;
+
+        for (int v = 0; v < numVertices; v++) {
+
+            int src = 3 * v;
+            int dst = 3 * (v * numFaces + faceIndex);
+
+            basisOffsets[dst] = offsets.get(src);
+            basisOffsets[dst + 1] = offsets.get(src + 1);
+            basisOffsets[dst + 2] = offsets.get(src + 2);
+
+        }
+
+        (shape ? shapeOffsetNorms : colorOffsetNorms)[faceIndex] = maxVertexLength(offsets);
+
+    } // setOffsets().
+
+    /**
+     * @param offsets x,y,z (or r,g,b) offsets per vertex.
+     * @return Length of the longest per-vertex offset.
+     */
+    public static float maxVertexLength(FloatBuffer offsets) {
+
+        double max = 0;
+        for (int k = 0; k + 2 < offsets.limit(); k += 3) {
+            double x = offsets.get(k), y = offsets.get(k + 1), z = offsets.get(k + 2);
+            max = Math.max(max, x * x + y * y + z * z);
+        }
+
+        // Round up, so the float never understates the true length.
+        return Math.nextUp((float) Math.sqrt(max));
+
+    } // maxVertexLength().
+
+    /**
+     * Add the weighted offsets of the given faces into running sums, in a single pass over the vertices. Large blends
+     * are split into blocks of vertices that are accumulated in parallel on the common fork-join pool, since each
+     * block writes only its own vertices' sums.
+     *
+     * @param faces        Indices of the faces to add (i.e., face number - 1), in ascending order.
+     * @param weightDeltas Interpolation weight to add for each face, parallel to faces.
+     * @param count        Number of faces to add.
+     * @param shapeSums    Running shape sums, x,y,z per vertex.
+     * @param colorSums    Running colour sums, r,g,b per vertex.
+     * @param isCancelled  Polled before each block of CANCEL_CHECK_VERTICES vertices (possibly from several threads at
+     *                     once); once it returns true, stop.
+     * @throws CancellationException If stopped because isCancelled returned true.
+     */
+    @Override
+    public void accumulate(int[] faces, double[] weightDeltas, int count, double[] shapeSums, double[] colorSums,
+                           BooleanSupplier isCancelled) {
+
+        if (count == 0) return;
+
+        // Fold the EV weights into the interpolation weights once, rather than once per vertex.
+        double[] shapeCoefficients = new double[count];
+        double[] colorCoefficients = new double[count];
+        for (int j = 0; j < count; j++) {
+            shapeCoefficients[j] = weightDeltas[j] * shapeWeights[faces[j]];
+            colorCoefficients[j] = weightDeltas[j] * colorWeights[faces[j]];
+        }
+
+        int numBlocks = (numVertices + CANCEL_CHECK_VERTICES - 1) / CANCEL_CHECK_VERTICES;
+
+        if (numBlocks < 2 || (long) count * numVertices < PARALLEL_MIN_WORK
+                || ForkJoinPool.getCommonPoolParallelism() < 2) {
+
+            for (int block = 0; block < numBlocks; block++) {
+                int from = block * CANCEL_CHECK_VERTICES;
+                if (isCancelled.getAsBoolean()) {
+                    throw new CancellationException("Blend cancelled at vertex " + from + ".");
+                }
+                accumulateVertices(from, Math.min(numVertices, from + CANCEL_CHECK_VERTICES),
+                        faces, shapeCoefficients, colorCoefficients, count, shapeSums, colorSums);
+            }
+
+        } else {
+
+            // Blocks skip their work once cancelled rather than throwing, so no block is still writing the sums when
+            // the cancellation reaches the caller.
+            AtomicBoolean cancelled = new AtomicBoolean();
+            List<RecursiveAction> tasks = new ArrayList<>(numBlocks);
+            for (int block = 0; block < numBlocks; block++) {
+                int from = block * CANCEL_CHECK_VERTICES;
+                int to = Math.min(numVertices, from + CANCEL_CHECK_VERTICES);
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        if (cancelled.get() || isCancelled.getAsBoolean()) {
+                            cancelled.set(true);
+                        } else {
+                            accumulateVertices(from, to, faces, shapeCoefficients, colorCoefficients, count,
+                                    shapeSums, colorSums);
+                        }
+                    }
+                });
+            }
+            ForkJoinTask.invokeAll(tasks); // Runs in the caller's fork-join pool, or the common pool.
+
+            if (cancelled.get()) throw new CancellationException("Blend cancelled.");
+
+        }
+
+    } // accumulate().
+
+    /**
+     * Add the weighted offsets of the given faces into the running sums of a range of vertices.
+     *
+     * @param from              First vertex of the range.
+     * @param to                Vertex after the last of the range.
+     * @param faces             Indices of the faces to add, in ascending order.
+     * @param shapeCoefficients Interpolation weight times shape EV weight of each face, parallel to faces.
+     * @param colorCoefficients Interpolation weight times colour EV weight of each face, parallel to faces.
+     * @param count             Number of faces to add.
+     * @param shapeSums         Running shape sums, x,y,z per vertex.
+     * @param colorSums         Running colour sums, r,g,b per vertex.
+     */
+    private void accumulateVertices(int from, int to, int[] faces, double[] shapeCoefficients,
+                                    double[] colorCoefficients, int count, double[] shapeSums, double[] colorSums) {
+
+        for (int v = from; v < to; v++) {
+
+            int base = 3 * v * numFaces;
+            int out = 3 * v;
+            double x = shapeSums[out], y = shapeSums[out + 1], z = shapeSums[out + 2];
+            double r = colorSums[out], g = colorSums[out + 1], b = colorSums[out + 2];
+
+            for (int j = 0; j < count; j++) {
+
+                int k = base + 3 * faces[j];
+                double shapeCoefficient = shapeCoefficients[j];
+                double colorCoefficient = colorCoefficients[j];
+
+                x += shapeCoefficient * shapeOffsets[k];
+                y += shapeCoefficient * shapeOffsets[k + 1];
+                z += shapeCoefficient * shapeOffsets[k + 2];
+                r += colorCoefficient * colorOffsets[k];
+                g += colorCoefficient * colorOffsets[k + 1];
+                b += colorCoefficient * colorOffsets[k + 2];
+
+            }
+
+            shapeSums[out] = x;
+            shapeSums[out + 1] = y;
+            shapeSums[out + 2] = z;
+            colorSums[out] = r;
+            colorSums[out + 1] = g;
+            colorSums[out + 2] = b;
+
+        }
+
+    } // accumulateVertices().
+
+    // Getters and Setters:
+
+    /**
+     * @return numVertices.
+     */
+    public int getNumVertices() {
+        return numVertices;
+    } // getNumVertices().
+
+    /**
+     * @return numFaces.
+     */
+    public int getNumFaces() {
+        return numFaces;
+    } // getNumFaces().
+
+    /**
+     * @param shape Whether getting the shape (true), or colour (false) offset lengths.
+     * @return Largest per-vertex offset length of each face.
+     */
+    public float[] getOffsetNorms(boolean shape) {
+        return shape ? shapeOffsetNorms : colorOffsetNorms;
+    } // getOffsetNorms().
+
+
+} // FaceBasis{}.
@@ -0,0 +1,449 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped binary form of the face data set, so the CSV files only have to be parsed once.
+ * <p>
+ * The binary file packs mesh.csv, sh_000.csv/tx_000.csv, sh_ev.csv/tx_ev.csv and every sh_00n.csv/tx_00n.csv offset
+ * file into a single little-endian file with the following layout:
+ * <pre>
+ *   Header (32 bytes):  magic (int), version (int), vertices (int), triangles (int), faces (int), reserved (int),
+ *                       CRC32 of the payload (long).
+ *   Payload:            mesh        int[triangles * 3]     (0-based vertex indices)
+ *                       shEV, txEV  float[faces] each
+ *                       sh000       float[vertices * 3]
+ *                       tx000       float[vertices * 3]
+ *                       shOffsets   float[faces][vertices * 3]   (sh_001 to sh_00n)
+ *                       txOffsets   float[faces][vertices * 3]   (tx_001 to tx_00n)
+ * </pre>
+ * The cache is rebuilt automatically whenever any of the CSV sources are newer than the binary file, or the binary
+ * file fails its version or checksum checks.
+ *
+ * @author 170004680
+ */
+public class FaceDataCache {
+
+
+    public static final String CACHE_FILE_NAME = "faces.bin"; // Name of the binary file within the data directory.
+
+    private static final int MAGIC = 0x42443346; // "F3DB" when read as little-endian bytes.
+    private static final int VERSION = 1; // Bump whenever the layout changes, forcing a rebuild of old files.
+    private static final int HEADER_SIZE = 32; // Size of the header in bytes.
+    private static final int CRC_OFFSET = 24; // Position of the payload checksum within the header.
+    private static final int MAX_FACE_FILES = 999; // Face file names are zero-padded to three digits.
+
+    private final int numVertices; // Number of vertices in every face.
+    private final int numTriangles; // Number of triangles in the mesh.
+    private final int numFaces; // Number of reference faces (offset files) in the cache.
+    private final MappedByteBuffer buffer; // Mapped contents of the whole binary file.
+
+
+    /**
+     * Constructor: Map an existing binary file and validate its header and checksum.
+     *
+     * @param cacheFile Binary file to map.
+     * @throws IOException If the file cannot be mapped or is not a valid cache file.
+     */
+    private FaceDataCache(File cacheFile) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid cache file size (" + size + " bytes): " + cacheFile);
+            }
+
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        }
+
+        // Validate the header before trusting any of the sizes it declares.
+        if (buffer.getInt(0) != MAGIC) throw new IOException("Not a face data cache file: " + cacheFile);
+        if (buffer.getInt(4) != VERSION) throw new IOException("Unsupported cache file version: " + cacheFile);
+
+        this.numVertices = buffer.getInt(8);
+        this.numTriangles = buffer.getInt(12);
+        this.numFaces = buffer.getInt(16);
+
+        if (buffer.capacity() != HEADER_SIZE + payloadSize(numVertices, numTriangles, numFaces)) {
+            throw new IOException("Cache file is truncated or has an inconsistent header: " + cacheFile);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(HEADER_SIZE, buffer.capacity() - HEADER_SIZE));
+        if (crc.getValue() != buffer.getLong(CRC_OFFSET)) {
+            throw new IOException("Cache file checksum mismatch: " + cacheFile);
+        }
+
+    } // FaceDataCache().
+
+    /**
+     * One-time converter: java FaceDataCache path_to_data_dir
+     *
+     * @param args args[0] - Path to data directory.
+     */
+    public static void main(String[] args) {
+
+        if (args.length != 1) {
+            System.out.println("java FaceDataCache <path_to_data_dir>");
+            System.exit(-1); // Error status.
+        }
+
+        File dataDir = new File(args[0]);
+        File cacheFile = new File(dataDir, CACHE_FILE_NAME);
+
+        try {
+            build(dataDir, cacheFile);
+            System.out.println("Wrote " + cacheFile.getAbsolutePath() + " (" + cacheFile.length() + " bytes).");
+        } catch (IOException e) {
+            System.out.println("FaceDataCache.main() Exception: " + e.getMessage());
+            System.exit(-1); // Error status.
+        }
+
+    } // main().
+
+    // Utility Functions:
+
+    /**
+     * Open the binary cache for a data directory, (re)building it first if it is missing, stale, or invalid.
+     *
+     * @param dataDir Directory containing the data files.
+     * @return Mapped face data cache.
+     * @throws IOException If the cache cannot be built or mapped.
+     */
+    public static FaceDataCache open(File dataDir) throws IOException {
+
+        File cacheFile = new File(dataDir, CACHE_FILE_NAME);
+
+        if (!isStale(dataDir, cacheFile)) {
+            try {
+                return new FaceDataCache(cacheFile);
+            } catch (IOException e) {
+                System.out.println("FaceDataCache.open(): Rebuilding cache - " + e.getMessage());
+            }
+        }
+
+        build(dataDir, cacheFile);
+        return new FaceDataCache(cacheFile);
+
+    } // open().
+
+    /**
+     * Check whether the binary cache is missing or older than any of the CSV files it was built from.
+     *
+     * @param dataDir   Directory containing the data files.
+     * @param cacheFile Binary cache file.
+     * @return True if the cache must be rebuilt, false otherwise.
+     */
+    public static boolean isStale(File dataDir, File cacheFile) {
+
+        if (!cacheFile.isFile()) return true;
+
+        long cacheModified = cacheFile.lastModified();
+        int numFaces = countFaceFiles(dataDir);
+
+        // Offset files removed since the cache was built also make it stale (added ones are caught by their dates).
+        int cachedFaces = readHeaderFaceCount(cacheFile);
+        if (cachedFaces < 0 || cachedFaces > numFaces) return true;
+
+        if (new File(dataDir, "mesh.csv").lastModified() > cacheModified) return true;
+        for (String name : new String[]{"sh_ev.csv", "tx_ev.csv"}) {
+            if (new File(dataDir, name).lastModified() > cacheModified) return true;
+        }
+        for (int faceNum = 0; faceNum <= numFaces; faceNum++) {
+            if (Face3DReader.faceFile(dataDir, faceNum, true).lastModified() > cacheModified) return true;
+            if (Face3DReader.faceFile(dataDir, faceNum, false).lastModified() > cacheModified) return true;
+        }
+
+        return false;
+
+    } // isStale().
+
+    /**
+     * Convert the CSV data files in a directory into a single binary cache file.
+     *
+     * @param dataDir   Directory containing the data files.
+     * @param cacheFile Binary file to write.
+     * @throws IOException If any source file cannot be read or is inconsistent with the others.
+     */
+    public static void build(File dataDir, File cacheFile) throws IOException {
+
+        int[] mesh = Face3DReader.readMesh(dataDir);
+        float[] sh000 = Face3DReader.readFaceDataFile(dataDir, 0, true);
+        float[] tx000 = Face3DReader.readFaceDataFile(dataDir, 0, false);
+        float[] shEV = Face3DReader.readWeightFile(dataDir, true);
+        float[] txEV = Face3DReader.readWeightFile(dataDir, false);
+
+        if (sh000.length != tx000.length) throw new IOException("sh_000.csv and tx_000.csv differ in length.");
+        int numVertices = sh000.length / 3;
+        int numTriangles = mesh.length / 3;
+        int numFaces = Math.min(countFaceFiles(dataDir), Math.min(shEV.length, txEV.length));
+
+        // Write to a temporary file first, so a failed conversion never leaves a half-written cache behind.
+        File tmpFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            PayloadWriter writer = new PayloadWriter(channel);
+
+            writer.putInts(mesh, 0, numTriangles * 3);
+            writer.putFloats(shEV, 0, numFaces);
+            writer.putFloats(txEV, 0, numFaces);
+            writer.putFloats(sh000, 0, sh000.length);
+            writer.putFloats(tx000, 0, tx000.length);
+
+            // All shape offsets followed by all colour offsets, so each kind can be read sequentially.
+            ParallelFaceLoader loader = new ParallelFaceLoader(null);
+            for (boolean shape : new boolean[]{true, false}) {
+
+                List<File> offsetFiles = new ArrayList<>(numFaces);
+                for (int faceNum = 1; faceNum <= numFaces; faceNum++) {
+                    offsetFiles.add(Face3DReader.faceFile(dataDir, faceNum, shape));
+                }
+
+                List<float[]> faceOffsets = loader.load(offsetFiles, Face3DReader::parseFaceData);
+                for (int i = 0; i < numFaces; i++) {
+                    float[] offsets = faceOffsets.get(i);
+                    if (offsets.length != sh000.length) {
+                        throw new IOException("Vertex count mismatch in " + offsetFiles.get(i));
+                    }
+                    writer.putFloats(offsets, 0, offsets.length);
+                }
+
+            }
+
+            writer.flush();
+
+            // Header is written last, once the payload checksum is known.
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(numVertices).putInt(numTriangles).putInt(numFaces).putInt(0);
+            header.putLong(writer.getChecksum());
+            header.flip();
+            channel.write(header, 0);
+
+        }
+
+        Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+    } // build().
+
+    /**
+     * Count the consecutive sh_00n.csv/tx_00n.csv pairs present in a data directory, starting from n = 1.
+     *
+     * @param dataDir Directory containing the data files.
+     * @return Number of reference faces with both shape and colour offset files.
+     */
+    private static int countFaceFiles(File dataDir) {
+
+        int numFaces = 0;
+        while (numFaces < MAX_FACE_FILES
+                && Face3DReader.faceFile(dataDir, numFaces + 1, true).isFile()
+                && Face3DReader.faceFile(dataDir, numFaces + 1, false).isFile()) {
+            numFaces++;
+        }
+
+        return numFaces;
+
+    } // countFaceFiles().
+
+    /**
+     * Read the number of faces declared in the header of an existing cache file.
+     *
+     * @param cacheFile Binary cache file.
+     * @return Number of faces in the header, or -1 if the header cannot be read.
+     */
+    private static int readHeaderFaceCount(File cacheFile) {
+
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) ;
+            return header.hasRemaining() ? -1 : header.getInt(16);
+
+        } catch (IOException e) {
+            return -1;
+        }
+
+    } // readHeaderFaceCount().
+
+    /**
+     * @param numVertices  Number of vertices in every face.
+     * @param numTriangles Number of triangles in the mesh.
+     * @param numFaces     Number of reference faces.
+     * @return Size in bytes of the payload for the given dimensions.
+     */
+    private static long payloadSize(int numVertices, int numTriangles, int numFaces) {
+
+        long vertexFloats = 3L * numVertices;
+        return 4L * (3L * numTriangles + 2L * numFaces + 2L * vertexFloats + 2L * numFaces * vertexFloats);
+
+    } // payloadSize().
+
+    /**
+     * @param offset Byte offset of the float section within the payload.
+     * @param count  Number of floats in the section.
+     * @return Little-endian float view of the section, sharing the mapped memory.
+     */
+    private FloatBuffer floatSection(long offset, long count) {
+
+        ByteBuffer section = buffer.slice((int) (HEADER_SIZE + offset), (int) (4 * count));
+        return section.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+
+    } // floatSection().
+
+    /**
+     * @return Byte offset of sh000 within the payload.
+     */
+    private long meanShapeOffset() {
+        return 4L * (3L * numTriangles + 2L * numFaces);
+    } // meanShapeOffset().
+
+    // Getters and Setters:
+
+    /**
+     * @return Triangle vertex indices (0-based), three per triangle.
+     */
+    public IntBuffer getMesh() {
+
+        ByteBuffer section = buffer.slice(HEADER_SIZE, 4 * 3 * numTriangles);
+        return section.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+
+    } // getMesh().
+
+    /**
+     * @param shape Whether getting the shape weights (sh_ev) or the colour weights (tx_ev).
+     * @return Weights, where index i is the weight of face (i + 1).
+     */
+    public FloatBuffer getWeights(boolean shape) {
+        return floatSection(4L * (3L * numTriangles + (shape ? 0 : numFaces)), numFaces);
+    } // getWeights().
+
+    /**
+     * @param shape Whether getting the average shape (sh_000) or average colour (tx_000).
+     * @return Average face data as x,y,z (or r,g,b) per vertex.
+     */
+    public FloatBuffer getMeanFace(boolean shape) {
+        return floatSection(meanShapeOffset() + (shape ? 0 : 4L * 3L * numVertices), 3L * numVertices);
+    } // getMeanFace().
+
+    /**
+     * @param faceNum Number of the face to get offsets for (i.e., 1 through to numFaces inclusive).
+     * @param shape   Whether getting shape offsets (sh_00n) or colour offsets (tx_00n).
+     * @return Offsets as x,y,z (or r,g,b) per vertex.
+     */
+    public FloatBuffer getOffsets(int faceNum, boolean shape) {
+
+        long vertexBytes = 4L * 3L * numVertices;
+        long offsetsStart = meanShapeOffset() + 2L * vertexBytes + (shape ? 0 : numFaces * vertexBytes);
+        return floatSection(offsetsStart + (faceNum - 1) * vertexBytes, 3L * numVertices);
+
+    } // getOffsets().
+
+    /**
+     * @return numVertices.
+     */
+    public int getNumVertices() {
+        return numVertices;
+    } // getNumVertices().
+
+    /**
+     * @return numTriangles.
+     */
+    public int getNumTriangles() {
+        return numTriangles;
+    } // getNumTriangles().
+
+    /**
+     * @return numFaces.
+     */
+    public int getNumFaces() {
+        return numFaces;
+    } // getNumFaces().
+
+
+    /**
+     * Buffered little-endian writer that keeps a running CRC32 of everything written.
+     */
+    private static class PayloadWriter {
+
+
+        private final FileChannel channel; // Channel being written to.
+        private final ByteBuffer chunk = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32(); // Checksum of the payload written so far.
+
+
+        /**
+         * Constructor: Payload starts immediately after the header.
+         *
+         * @param channel Channel to write to.
+         * @throws IOException If the channel cannot be positioned.
+         */
+        PayloadWriter(FileChannel channel) throws IOException {
+
+            this.channel = channel;
+            channel.position(HEADER_SIZE);
+
+        } // PayloadWriter().
+
+        /**
+         * @param values Values to append to the payload.
+         * @param from   Index of the first value to write.
+         * @param count  Number of values to write.
+         */
+        void putInts(int[] values, int from, int count) throws IOException {
+            for (int i = from; i < from + count; i++) {
+                if (chunk.remaining() < 4) flush();
+                chunk.putInt(values[i]);
+            }
+        } // putInts().
+
+        /**
+         * @param values Values to append to the payload.
+         * @param from   Index of the first value to write.
+         * @param count  Number of values to write.
+         */
+        void putFloats(float[] values, int from, int count) throws IOException {
+            for (int i = from; i < from + count; i++) {
+                if (chunk.remaining() < 4) flush();
+                chunk.putFloat(values[i]);
+            }
+        } // putFloats().
+
+        /**
+         * Write out everything buffered so far, updating the checksum.
+         */
+        void flush() throws IOException {
+
+            chunk.flip();
+            crc.update(chunk.duplicate());
+            while (chunk.hasRemaining()) channel.write(chunk);
+            chunk.clear();
+
+        } // flush().
+
+        /**
+         * @return CRC32 of everything flushed so far.
+         */
+        long getChecksum() {
+            return crc.getValue();
+        } // getChecksum().
+
+
+    } // PayloadWriter{}.
+
+
+} // FaceDataCache{}.
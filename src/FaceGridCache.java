@@ -0,0 +1,327 @@
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Cache of faces interpolated at the nodes of a regular grid laid over the reference face polygon, so that a point
+ * inside the polygon is answered by blending the four faces at the corners of its grid cell, instead of all n
+ * reference faces:
+ * <p>
+ * face(p) ~ sum over corners k of c_k * face(node_k), where c_k are the bilinear co-efficients of p in its cell.
+ * <p>
+ * Node faces are built lazily, the first time a point in an adjacent cell is asked for, and kept quantised to 16 bits
+ * per component (12 bytes per vertex, rather than 24 as floats), each channel scaled to its own range at that node.
+ * <p>
+ * Error against the exact blend at p has two parts, both reported for every face:
+ * <ul>
+ *   <li>Weights. A blend is linear in the weights, so the bilinear blend of the node faces is exactly the blend of the
+ *   bilinear weights w'(p) = sum of c_k * w(node_k). Both weight vectors sum to 1, so the mean face terms cancel and
+ *   each vertex is within sum over i of |w'_i - w_i(p)| * |ev_i| * M_i of the exact blend, where M_i is the largest
+ *   per-vertex offset length of face i. This bound is computed for every point rather than assumed from the spacing:
+ *   the distance based weights change fastest close to a polygon vertex, so the error is largest there, and grows
+ *   with the spacing though not at any fixed rate.</li>
+ *   <li>Quantisation. The largest per-vertex distance between each node face and its quantised form is measured
+ *   when the node is built (at most half a quantisation step per component); the blend is within the co-efficient
+ *   weighted sum of these.</li>
+ * </ul>
+ * With sparse blending, the node faces are themselves sparse blends, so the sparse error bound adds to these.
+ * Faces are only built and blended on the render worker, so the cache is not synchronised.
+ *
+ * @author 170004680
+ */
+public class FaceGridCache {
+
+
+    private static final int LEVELS = 65535; // Largest quantised value of a component (16 bits, unsigned).
+    private static final int CHANNELS = 6; // Quantised channels per vertex: x, y, z, r, g, b.
+
+    private final Face3DReader face3DReader; // Interpolates the faces at the nodes.
+    private final Function<Point2D, ArrayList<Double>> weightFunction; // Interpolation weights of a point.
+    private final double originX, originY; // Position of node (0, 0).
+    private final double spacing; // Distance between adjacent nodes.
+    private final int columns, rows; // Number of nodes across and down.
+    private final GridNode[] nodes; // Node faces, row by row (null until first needed).
+
+    private int[] indices; // Mesh shared by every face (known once the first node is built).
+    private MeshAdjacency adjacency; // Triangles using each vertex of the mesh.
+    private int nodesBuilt; // Number of node faces built so far.
+    private long nodeBytes; // Bytes held by the quantised node faces.
+    private double lastShapeErrorBound; // Worst-case shape distance of the last face from the exact blend.
+    private double lastColorErrorBound; // Worst-case colour distance of the last face from the exact blend.
+
+
+    /**
+     * Constructor: Lay a grid over the given points (none of the node faces are built yet).
+     *
+     * @param face3DReader   Reader used to interpolate the faces at the nodes.
+     * @param weightFunction Interpolation weights at a point, summing to 1 (order as for the reader).
+     * @param points         Points the grid must cover, i.e. the vertices of the reference face polygon.
+     * @param spacing        Distance between adjacent nodes, in the units of the points.
+     */
+    public FaceGridCache(Face3DReader face3DReader, Function<Point2D, ArrayList<Double>> weightFunction,
+                         List<Point2D> points, double spacing) {
+
+        this.face3DReader = face3DReader;
+        this.weightFunction = weightFunction;
+        this.spacing = spacing;
+
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (Point2D point : points) {
+            minX = Math.min(minX, point.getX());
+            minY = Math.min(minY, point.getY());
+            maxX = Math.max(maxX, point.getX());
+            maxY = Math.max(maxY, point.getY());
+        }
+
+        this.originX = minX;
+        this.originY = minY;
+        this.columns = (int) Math.ceil((maxX - minX) / spacing) + 1;
+        this.rows = (int) Math.ceil((maxY - minY) / spacing) + 1;
+        this.nodes = new GridNode[columns * rows];
+
+    } // FaceGridCache().
+
+    // Utility Functions:
+
+    /**
+     * Get the face at a point by blending the faces at the corners of its grid cell, building any corner not yet
+     * built. Points outside the grid are clamped to its edge.
+     *
+     * @param point       Point to get the face at.
+     * @param isCancelled Polled while building corner faces; once it returns true the face is abandoned.
+     * @return Blended face.
+     * @throws CancellationException If cancelled while building a corner face (corners already built are kept).
+     */
+    public Face3D getFace(Point2D point, BooleanSupplier isCancelled) {
+
+        // Cell containing the point, and the position of the point within it.
+        double gridX = Math.min(Math.max((point.getX() - originX) / spacing, 0), columns - 1);
+        double gridY = Math.min(Math.max((point.getY() - originY) / spacing, 0), rows - 1);
+        int column = Math.min((int) gridX, Math.max(columns - 2, 0));
+        int row = Math.min((int) gridY, Math.max(rows - 2, 0));
+        double u = gridX - column, v = gridY - row;
+
+        // Corners with a non-zero co-efficient (a point on a node or cell edge needs fewer than four).
+        double[] cornerCoefficients = {(1 - u) * (1 - v), u * (1 - v), (1 - u) * v, u * v};
+        int[][] cornerOffsets = {{0, 0}, {1, 0}, {0, 1}, {1, 1}};
+        List<GridNode> corners = new ArrayList<>(4);
+        List<Double> coefficients = new ArrayList<>(4);
+        for (int k = 0; k < 4; k++) {
+            if (cornerCoefficients[k] > 0) {
+                corners.add(getNode(column + cornerOffsets[k][0], row + cornerOffsets[k][1], isCancelled));
+                coefficients.add(cornerCoefficients[k]);
+            }
+        }
+
+        // value = sum of c_k * (min_k + step_k * q_k) = sum of c_k * min_k + sum of (c_k * step_k) * q_k.
+        int numVertices = adjacency.getNumVertices();
+        GeometryStore geometry = new GeometryStore(numVertices);
+        float[][] channels = {geometry.getX(), geometry.getY(), geometry.getZ(),
+                geometry.getR(), geometry.getG(), geometry.getB()};
+
+        for (int channel = 0; channel < CHANNELS; channel++) {
+
+            double base = 0;
+            double[] scales = new double[corners.size()];
+            char[][] quantised = new char[corners.size()][];
+            for (int k = 0; k < corners.size(); k++) {
+                GridNode corner = corners.get(k);
+                base += coefficients.get(k) * corner.minimums[channel];
+                scales[k] = coefficients.get(k) * corner.steps[channel];
+                quantised[k] = corner.quantised[channel];
+            }
+
+            float[] out = channels[channel];
+            for (int vertex = 0; vertex < numVertices; vertex++) {
+                double value = base;
+                for (int k = 0; k < quantised.length; k++) value += scales[k] * quantised[k][vertex];
+                out[vertex] = (float) value;
+            }
+
+        }
+
+        // Weights the blend actually represents, and how far that and the quantisation can be from the exact blend.
+        double[] exactWeights = toArray(weightFunction.apply(point));
+        double[] blendedWeights = new double[exactWeights.length];
+        double shapeQuantisationError = 0, colorQuantisationError = 0;
+        for (int k = 0; k < corners.size(); k++) {
+            GridNode corner = corners.get(k);
+            double coefficient = coefficients.get(k);
+            for (int i = 0; i < blendedWeights.length; i++) blendedWeights[i] += coefficient * corner.weights[i];
+            shapeQuantisationError += coefficient * corner.shapeQuantisationError;
+            colorQuantisationError += coefficient * corner.colorQuantisationError;
+        }
+        double[] weightErrorBounds = face3DReader.getWeightErrorBounds(blendedWeights, exactWeights);
+        lastShapeErrorBound = weightErrorBounds[0] + shapeQuantisationError;
+        lastColorErrorBound = weightErrorBounds[1] + colorQuantisationError;
+
+        return new Face3D(geometry, indices, adjacency);
+
+    } // getFace().
+
+    /**
+     * Get the face at a node, interpolating and quantising it if not already built.
+     *
+     * @param column      Column of the node.
+     * @param row         Row of the node.
+     * @param isCancelled Polled while interpolating; once it returns true the node is abandoned.
+     * @return Quantised node face.
+     * @throws CancellationException If cancelled while interpolating.
+     */
+    private GridNode getNode(int column, int row, BooleanSupplier isCancelled) {
+
+        GridNode node = nodes[row * columns + column];
+        if (node == null) {
+
+            Point2D position = new Point2D.Double(originX + column * spacing, originY + row * spacing);
+            ArrayList<Double> weights = weightFunction.apply(position);
+            Face3D face3D = face3DReader.getInterpolatedFace(weights, isCancelled);
+
+            node = new GridNode(toArray(weights), face3D.getGeometry());
+            nodes[row * columns + column] = node;
+            indices = face3D.getIndices();
+            adjacency = face3D.getAdjacency();
+            nodesBuilt++;
+            nodeBytes += node.getBytes();
+
+        }
+
+        return node;
+
+    } // getNode().
+
+    /**
+     * @param list List of weights.
+     * @return Weights as an array.
+     */
+    private static double[] toArray(ArrayList<Double> list) {
+
+        double[] array = new double[list.size()];
+        for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+        return array;
+
+    } // toArray().
+
+    // Getters and Setters:
+
+    /**
+     * @return Number of node faces built so far.
+     */
+    public int getNodesBuilt() {
+        return nodesBuilt;
+    } // getNodesBuilt().
+
+    /**
+     * @return Number of nodes in the grid.
+     */
+    public int getNumNodes() {
+        return nodes.length;
+    } // getNumNodes().
+
+    /**
+     * @return Bytes held by the quantised node faces built so far.
+     */
+    public long getNodeBytes() {
+        return nodeBytes;
+    } // getNodeBytes().
+
+    /**
+     * @return Worst-case per-vertex distance of the last blended shape from the exact blend at its point.
+     */
+    public double getLastShapeErrorBound() {
+        return lastShapeErrorBound;
+    } // getLastShapeErrorBound().
+
+    /**
+     * @return Worst-case per-vertex distance of the last blended colour from the exact blend at its point.
+     */
+    public double getLastColorErrorBound() {
+        return lastColorErrorBound;
+    } // getLastColorErrorBound().
+
+
+    /**
+     * Face at a grid node, quantised to 16 bits per component.
+     */
+    private static class GridNode {
+
+
+        final double[] weights; // Interpolation weights at the node.
+        final char[][] quantised = new char[CHANNELS][]; // Quantised x, y, z, r, g, b of each vertex.
+        final float[] minimums = new float[CHANNELS]; // Value of quantised 0 in each channel.
+        final float[] steps = new float[CHANNELS]; // Value of one quantisation step in each channel.
+        final double shapeQuantisationError; // Largest per-vertex distance of the quantised shape from the face.
+        final double colorQuantisationError; // Largest per-vertex distance of the quantised colour from the face.
+
+
+        /**
+         * Constructor: Quantise a face.
+         *
+         * @param weights  Interpolation weights at the node.
+         * @param geometry Position and colour of every vertex of the face at the node.
+         */
+        GridNode(double[] weights, GeometryStore geometry) {
+
+            this.weights = weights;
+
+            float[][] channels = {geometry.getX(), geometry.getY(), geometry.getZ(),
+                    geometry.getR(), geometry.getG(), geometry.getB()};
+            int numVertices = geometry.getNumVertices();
+
+            // Squared error of each vertex, summed over the shape channels then the colour channels.
+            double[] shapeErrors = new double[numVertices], colorErrors = new double[numVertices];
+
+            for (int channel = 0; channel < CHANNELS; channel++) {
+
+                float[] values = channels[channel];
+                float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+                for (float value : values) {
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+                if (numVertices == 0) min = max = 0;
+
+                float step = (max - min) / LEVELS;
+                minimums[channel] = min;
+                steps[channel] = step;
+                quantised[channel] = new char[numVertices];
+
+                double[] errors = (channel < 3) ? shapeErrors : colorErrors;
+                for (int vertex = 0; vertex < numVertices; vertex++) {
+
+                    int level = (step > 0) ? Math.round((values[vertex] - min) / step) : 0;
+                    level = Math.min(Math.max(level, 0), LEVELS);
+                    quantised[channel][vertex] = (char) level;
+
+                    double error = ((double) min + (double) step * level) - values[vertex];
+                    errors[vertex] += error * error;
+
+                }
+
+            }
+
+            double shapeError = 0, colorError = 0;
+            for (int vertex = 0; vertex < numVertices; vertex++) {
+                shapeError = Math.max(shapeError, shapeErrors[vertex]);
+                colorError = Math.max(colorError, colorErrors[vertex]);
+            }
+            this.shapeQuantisationError = Math.sqrt(shapeError);
+            this.colorQuantisationError = Math.sqrt(colorError);
+
+        } // GridNode().
+
+        /**
+         * @return Number of bytes held by the arrays of this node.
+         */
+        long getBytes() {
+            return 2L * CHANNELS * quantised[0].length + 8L * weights.length + 8L * CHANNELS;
+        } // getBytes().
+
+
+    } // GridNode{}.
+
+
+} // FaceGridCache{}.
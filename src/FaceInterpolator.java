@@ -0,0 +1,288 @@
+import java.io.UncheckedIOException;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Interpolation engine that keeps the previous result, so a new weight vector only costs as much as the faces whose
+ * weights actually changed:
+ * <p>
+ * sums += sum over changed i of (w_new_i - w_old_i) * ev_i * offset_i
+ * <p>
+ * Weight changes smaller than the epsilon are deferred rather than dropped - the face keeps its old effective weight
+ * until its accumulated change exceeds the epsilon - so the result never differs from the exact blend by more than
+ * epsilon * |ev_i * offset_i| per face. Every so many incremental updates the sums are rebuilt from scratch, which
+ * bounds the floating point drift of repeated additions and subtractions.
+ * <p>
+ * An interpolation can be cancelled part way through (e.g. when a newer one is wanted). The sums are then only partly
+ * updated, so the previous result is forgotten and the next interpolation is computed from scratch.
+ *
+ * @author 170004680
+ */
+public class FaceInterpolator {
+
+
+    public static final double DEFAULT_EPSILON = 1e-6; // Default smallest weight change worth applying.
+    public static final int DEFAULT_FULL_BLEND_INTERVAL = 32; // Default incremental updates between full blends.
+
+    private final OffsetSource offsetSource; // Reference face offsets to blend.
+    private final float[] meanShape; // Average shape, x,y,z per vertex (sh_000).
+    private final float[] meanColor; // Average colour, r,g,b per vertex (tx_000).
+    private final int numFaces; // Number of reference faces available from the offset source.
+
+    private final double[] shapeSums; // sum(w_i * ev_i * sh_00i) for the effective weights, x,y,z per vertex.
+    private final double[] colorSums; // sum(w_i * ev_i * tx_00i) for the effective weights, r,g,b per vertex.
+    private double[] effectiveWeights; // Weights the sums currently represent, or null before the first blend.
+
+    private final int[] changedFaces; // Scratch list of face indices to apply.
+    private final double[] weightDeltas; // Scratch list of weight changes to apply, parallel to changedFaces.
+
+    private double epsilon = DEFAULT_EPSILON; // Smallest weight change worth applying.
+    private int fullBlendInterval = DEFAULT_FULL_BLEND_INTERVAL; // Incremental updates between full blends.
+    private int updatesSinceFullBlend; // Incremental updates applied since the sums were last rebuilt.
+
+    private long fullBlends; // Number of blends computed from scratch.
+    private long incrementalBlends; // Number of blends computed from the previous result.
+    private long facesApplied; // Total number of face offsets added into the sums.
+
+
+    /**
+     * Constructor:
+     *
+     * @param offsetSource Reference face offsets to blend.
+     * @param meanShape    Average shape, x,y,z per vertex.
+     * @param meanColor    Average colour, r,g,b per vertex.
+     * @param numFaces     Number of reference faces available from the offset source.
+     */
+    public FaceInterpolator(OffsetSource offsetSource, FloatBuffer meanShape, FloatBuffer meanColor, int numFaces) {
+
+        this.offsetSource = offsetSource;
+        this.meanShape = new float[meanShape.remaining()];
+        this.meanColor = new float[meanColor.remaining()];
+        meanShape.get(0, this.meanShape);
+        meanColor.get(0, this.meanColor);
+        this.numFaces = numFaces;
+
+        this.shapeSums = new double[this.meanShape.length];
+        this.colorSums = new double[this.meanColor.length];
+        this.changedFaces = new int[numFaces];
+        this.weightDeltas = new double[numFaces];
+
+    } // FaceInterpolator().
+
+    // Utility Functions:
+
+    /**
+     * Blend the reference faces with the given weights, updating the previous result where possible.
+     *
+     * @param weights Interpolation weights, where index i is the weight of face (i + 1).
+     * @param out     Store receiving the position and colour of every vertex.
+     */
+    public void interpolate(double[] weights, GeometryStore out) {
+        interpolate(weights, out, () -> false);
+    } // interpolate().
+
+    /**
+     * Blend the reference faces with the given weights, updating the previous result where possible, unless
+     * cancelled first.
+     *
+     * @param weights     Interpolation weights, where index i is the weight of face (i + 1).
+     * @param out         Store receiving the position and colour of every vertex.
+     * @param isCancelled Polled during the blend; once it returns true the blend is abandoned.
+     * @throws CancellationException If the blend was cancelled (out is then unchanged).
+     * @throws UncheckedIOException  If streamed offsets could not be read (out is then unchanged).
+     */
+    public void interpolate(double[] weights, GeometryStore out, BooleanSupplier isCancelled) {
+
+        try {
+            updateSums(weights, isCancelled);
+        } catch (RuntimeException e) { // Cancelled, or the offsets could not be read.
+            effectiveWeights = null; // Sums are only partly updated.
+            throw e;
+        }
+
+        // out = (sum of w_i) * mean + sum(w_i * ev_i * offset_i).
+        double weightSum = 0;
+        for (double weight : effectiveWeights) weightSum += weight;
+
+        float[] x = out.getX(), y = out.getY(), z = out.getZ();
+        float[] r = out.getR(), g = out.getG(), b = out.getB();
+
+        for (int v = 0; v < out.getNumVertices(); v++) {
+
+            int k = 3 * v;
+            x[v] = (float) (weightSum * meanShape[k] + shapeSums[k]);
+            y[v] = (float) (weightSum * meanShape[k + 1] + shapeSums[k + 1]);
+            z[v] = (float) (weightSum * meanShape[k + 2] + shapeSums[k + 2]);
+            r[v] = (float) (weightSum * meanColor[k] + colorSums[k]);
+            g[v] = (float) (weightSum * meanColor[k + 1] + colorSums[k + 1]);
+            b[v] = (float) (weightSum * meanColor[k + 2] + colorSums[k + 2]);
+
+        }
+
+    } // interpolate().
+
+    /**
+     * Bring the sums up to date with the given weights, from scratch or from the previous result.
+     *
+     * @param weights     Interpolation weights, where index i is the weight of face (i + 1).
+     * @param isCancelled Polled during the update; once it returns true the update is abandoned.
+     * @throws CancellationException If the update was cancelled.
+     */
+    private void updateSums(double[] weights, BooleanSupplier isCancelled) {
+
+        int n = Math.min(weights.length, numFaces);
+
+        if (effectiveWeights == null || updatesSinceFullBlend >= fullBlendInterval) {
+            fullBlend(weights, n, isCancelled);
+        } else {
+
+            // Collect the faces whose weights moved by more than epsilon.
+            int numChanged = 0;
+            for (int i = 0; i < numFaces; i++) {
+
+                double delta = ((i < n) ? weights[i] : 0) - effectiveWeights[i];
+                if (Math.abs(delta) > epsilon) {
+                    changedFaces[numChanged] = i;
+                    weightDeltas[numChanged] = delta;
+                    numChanged++;
+                }
+
+            }
+
+            // Applying almost every face costs as much as a full blend, which also resets the drift.
+            if (2 * numChanged > numFaces) {
+                fullBlend(weights, n, isCancelled);
+            } else {
+
+                offsetSource.accumulate(changedFaces, weightDeltas, numChanged, shapeSums, colorSums, isCancelled);
+                for (int j = 0; j < numChanged; j++) effectiveWeights[changedFaces[j]] += weightDeltas[j];
+
+                updatesSinceFullBlend++;
+                incrementalBlends++;
+                facesApplied += numChanged;
+
+            }
+
+        }
+
+    } // updateSums().
+
+    /**
+     * Rebuild the sums from scratch for the given weights.
+     *
+     * @param weights     Interpolation weights, where index i is the weight of face (i + 1).
+     * @param n           Number of weights to use.
+     * @param isCancelled Polled during the blend; once it returns true the blend is abandoned.
+     * @throws CancellationException If the blend was cancelled.
+     */
+    private void fullBlend(double[] weights, int n, BooleanSupplier isCancelled) {
+
+        Arrays.fill(shapeSums, 0);
+        Arrays.fill(colorSums, 0);
+        effectiveWeights = new double[numFaces];
+
+        // Faces with a zero weight contribute nothing, so are not passed to the source at all.
+        int numFacesUsed = 0;
+        for (int i = 0; i < n; i++) {
+            effectiveWeights[i] = weights[i];
+            if (weights[i] != 0) {
+                changedFaces[numFacesUsed] = i;
+                weightDeltas[numFacesUsed] = weights[i];
+                numFacesUsed++;
+            }
+        }
+
+        offsetSource.accumulate(changedFaces, weightDeltas, numFacesUsed, shapeSums, colorSums, isCancelled);
+
+        updatesSinceFullBlend = 0;
+        fullBlends++;
+        facesApplied += numFacesUsed;
+
+    } // fullBlend().
+
+    /**
+     * Forget the previous result, so the next interpolation is computed from scratch.
+     */
+    public void reset() {
+        effectiveWeights = null;
+    } // reset().
+
+    // Getters and Setters:
+
+    /**
+     * @return epsilon.
+     */
+    public double getEpsilon() {
+        return epsilon;
+    } // getEpsilon().
+
+    /**
+     * @param epsilon Smallest weight change worth applying (0 applies every change exactly).
+     */
+    public void setEpsilon(double epsilon) {
+        this.epsilon = Math.max(0, epsilon);
+    } // setEpsilon().
+
+    /**
+     * @return fullBlendInterval.
+     */
+    public int getFullBlendInterval() {
+        return fullBlendInterval;
+    } // getFullBlendInterval().
+
+    /**
+     * @param fullBlendInterval Incremental updates between full blends (0 blends from scratch every time).
+     */
+    public void setFullBlendInterval(int fullBlendInterval) {
+        this.fullBlendInterval = Math.max(0, fullBlendInterval);
+    } // setFullBlendInterval().
+
+    /**
+     * @return fullBlends.
+     */
+    public long getFullBlends() {
+        return fullBlends;
+    } // getFullBlends().
+
+    /**
+     * @return incrementalBlends.
+     */
+    public long getIncrementalBlends() {
+        return incrementalBlends;
+    } // getIncrementalBlends().
+
+    /**
+     * @return facesApplied.
+     */
+    public long getFacesApplied() {
+        return facesApplied;
+    } // getFacesApplied().
+
+
+    /**
+     * Source of reference face offsets, e.g. a resident basis or offset files streamed from disk.
+     */
+    public interface OffsetSource {
+
+        /**
+         * Add weighted offsets of some of the reference faces into running sums:
+         * sums += weightDelta_j * ev_f * offset_f, for f = faces[j].
+         *
+         * @param faces        Indices of the faces to add (i.e., face number - 1), in ascending order.
+         * @param weightDeltas Interpolation weight to add for each face, parallel to faces.
+         * @param count        Number of faces to add.
+         * @param shapeSums    Running shape sums, x,y,z per vertex.
+         * @param colorSums    Running colour sums, r,g,b per vertex.
+         * @param isCancelled  Polled every so often; once it returns true, stop (leaving the sums partly updated).
+         * @throws CancellationException If stopped because isCancelled returned true.
+         * @throws UncheckedIOException  If the offsets of a face could not be read.
+         */
+        void accumulate(int[] faces, double[] weightDeltas, int count, double[] shapeSums, double[] colorSums,
+                        BooleanSupplier isCancelled);
+
+    } // OffsetSource{}.
+
+
+} // FaceInterpolator{}.
@@ -1,8 +1,10 @@
 import javax.swing.*;
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.function.Supplier;
 
 /**
  * FaceUIPanel: Handles the UI for drawing faces.
@@ -12,13 +14,37 @@ import java.util.HashMap;
 public class FaceUIPanel extends JPanel {
 
 
-    private Face3D face3D; // Face represented in this UI window.
+    private static final String RENDERING_MSG = "Rendering\u2026"; // Shown while a face or frame is in progress.
+
+    private volatile Face3D face3D; // Face represented in this UI window.
+    private final RenderService renderService; // Draws frames on a worker thread, off the event dispatch thread.
+    private int frameWidth, frameHeight; // Size of the frame being drawn.
 
     // Variables used for scaling the 3D face co-ordinates to the window co-ordinates.
     private double face3DMinX = Double.MAX_VALUE, face3DMaxX = Double.MIN_VALUE;
     private double face3DMinY = Double.MAX_VALUE, face3DMaxY = Double.MIN_VALUE;
     private double face3DMinZ = Double.MAX_VALUE, face3DMaxZ = Double.MIN_VALUE;
 
+    private final Orientation orientation = new Orientation(); // Rotation of the face relative to the viewer.
+    private final double[] viewRotation = new double[9]; // Orientation as a matrix, for the frame being drawn.
+
+    private GeometryStore screenVertices; // Vertices in window co-ordinates with their lit colours, reused between frames.
+    private final SoftwareRasterizer rasterizer; // Depth-buffered framebuffer for the face.
+    private int[] triangleColors; // Flat shaded colour of each triangle, reused between frames.
+    private final DepthSorter depthSorter = new DepthSorter(); // Back-to-front order of triangles for '-pa'.
+
+    // Culling stage - triangles facing away from the viewer are dropped before they are lit or drawn.
+    private int frontNormalSign; // Sign of Z of the surface normal of front faces in the face's own co-ordinates.
+    private int[] frontIndices; // Vertex indices of the front-facing triangles of the frame, reused between frames.
+    private boolean[] frontFacing; // Whether each triangle of the mesh faces the viewer this frame, reused between frames.
+    private int[] vertexLitFrame; // Frame in which each vertex was last lit for Gouraud shading, reused between frames.
+    private int litFrame; // Number of the current frame in vertexLitFrame.
+    private int drawnTriangles, culledTriangles; // Triangles drawn and culled in the last frame.
+
+    private boolean facePending; // Whether the face has changed since the last frame was drawn (render worker only).
+    private volatile int facesPresented; // New faces drawn into finished frames so far.
+    private volatile long lastFacePresentedNanos; // System.nanoTime() when the last new face finished drawing.
+
 
     /**
      * Constructor:
@@ -26,16 +52,31 @@ public class FaceUIPanel extends JPanel {
     public FaceUIPanel() {
 
         this.face3D = null; // No face to draw on construction.
+        this.rasterizer = new SoftwareRasterizer(P2main.renderThreads);
 
         this.setLayout(new FlowLayout(FlowLayout.CENTER));
         this.setBackground(Color.white);
 
+        RotationHandler rotationHandler = new RotationHandler(this); // Drag the face to rotate it.
+        this.addMouseListener(rotationHandler);
+        this.addMouseMotionListener(rotationHandler);
+
+        // Every frame is drawn on the render worker; painting only copies the last finished frame.
+        this.renderService = new RenderService("Face renderer", this, this::renderFrame);
+        this.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent event) {
+                renderService.requestFrame(); // Redraw at the new size.
+            }
+        });
+
     } // FaceUIPanel().
 
     // UI Painting Methods:
 
     /**
-     * Determines how the current panel is to be painted.
+     * Determines how the current panel is to be painted: the last frame finished by the render worker is copied in,
+     * with a note while the next one is still being worked on.
      *
      * @param graphics Graphics object from java.awt.
      */
@@ -44,66 +85,230 @@ public class FaceUIPanel extends JPanel {
 
         super.paintComponent(graphics);
 
-        Graphics2D graphics2D = (Graphics2D) graphics;
+        renderService.drawFrame(graphics);
+
+        if (renderService.isBusy()) {
+            graphics.setColor(Color.DARK_GRAY);
+            graphics.drawString(RENDERING_MSG, 10, getHeight() - 10);
+        }
+
+    } // paintComponent().
+
+    /**
+     * Draw a frame of the panel (on the render worker).
+     *
+     * @param graphics2D Graphics object of the frame.
+     * @param width      Width of the frame.
+     * @param height     Height of the frame.
+     */
+    private void renderFrame(Graphics2D graphics2D, int width, int height) {
+
+        frameWidth = width;
+        frameHeight = height;
+
+        graphics2D.setColor(this.getBackground());
+        graphics2D.fillRect(0, 0, width, height);
 
         // If given a 3D face, then render it.
         if (this.face3D != null) {
             draw3DFace(graphics2D);
         }
 
-    } // paintComponent().
+        if (facePending) { // The new face is in the frame about to be shown.
+            facePending = false;
+            lastFacePresentedNanos = System.nanoTime();
+            facesPresented++; // Only the render worker writes.
+        }
+
+    } // renderFrame().
 
     /**
      * Draw a 3D face in this window:
      *
-     * Orthographic projection of the 3D face parallel to the z-plane, with face polygons being drawn using painter's
-     * algorithm. Flat shading is used and it is assumed that faces are perfectly matte with a unity diffuse coefficient
-     * and that there is a single directional light source aligned with the viewing direction.
+     * Orthographic projection of the 3D face parallel to the z-plane, with face polygons being rasterized into a
+     * depth-buffered framebuffer (or, with '-pa', drawn using painter's algorithm). Flat shading is used and it is
+     * assumed that faces are perfectly matte with a unity diffuse coefficient and that there is a single directional
+     * light source aligned with the viewing direction.
      *
      * @param graphics2D Graphics object to use to draw in this panel.
      */
     private void draw3DFace(Graphics2D graphics2D) {
 
-        ArrayList<Triangle> face3DPolygons = face3D.getFaceData(); // Polygons comprising the face to be rendered.
+        // Per-vertex stage - each unique vertex is transformed once, not once per triangle.
+        orientation.getMatrix(viewRotation); // Same orientation for every stage of the frame.
+        GeometryStore vertices = scaleVertices(face3D.getGeometry()); // Rotate and scale vertices to fit in render window.
+
+        // Per-triangle stages - only triangles facing the viewer are lit (each of their vertices once, for Gouraud
+        // shading) and drawn (wire-frame shows all unless '-wc').
+        int[] indices = face3D.getIndices();
+        int numTriangles = face3D.getNumTriangles();
+        boolean[] visible = null; // Every triangle is drawn unless culled.
+        if (P2main.renderingType != -1 || P2main.cullWireFrame) {
+            numTriangles = cullBackFaces(vertices, indices, numTriangles);
+            indices = frontIndices;
+            visible = frontFacing;
+        }
+        drawnTriangles = numTriangles;
+        culledTriangles = face3D.getNumTriangles() - numTriangles;
+        if (P2main.printStats) System.out.printf("Frame: %d triangles drawn, %d culled.%n", drawnTriangles, culledTriangles);
+
+        if (P2main.renderingType == 1 && P2main.isLighting) {
+            applyIlluminationModelGouraud(face3D, vertices, indices, numTriangles);
+        }
+
+        if (P2main.usePaintersAlgorithm) {
+            drawPaintersAlgorithm(graphics2D, vertices, visible, numTriangles);
+        } else if (P2main.renderingType == -1) {
+            drawWireFrame(graphics2D, vertices, indices, numTriangles);
+        } else {
+            drawZBuffered(graphics2D, vertices, indices, numTriangles);
+        }
+
+    } // draw3DFace().
+
+    /**
+     * Rasterize every triangle of the face into the depth-buffered framebuffer, then draw the frame in one go.
+     * Visibility is decided per pixel by the depth buffer, so the triangles are drawn in mesh order without sorting.
+     *
+     * @param graphics2D   Graphics object to use to draw in this panel.
+     * @param vertices     Vertices in window co-ordinates, with their (lit, for Gouraud shading) colours.
+     * @param indices      Three vertex indices per triangle to draw.
+     * @param numTriangles Number of triangles to draw.
+     */
+    private void drawZBuffered(Graphics2D graphics2D, GeometryStore vertices, int[] indices, int numTriangles) {
+
+        float[] r = vertices.getR(), g = vertices.getG(), b = vertices.getB();
+
+        int[] flatColors = null; // Gouraud shading interpolates the vertex colours instead.
+        if (P2main.renderingType == 0) { // Flat Shading.
+
+            if (triangleColors == null || triangleColors.length < numTriangles) {
+                triangleColors = new int[face3D.getNumTriangles()];
+            }
+
+            for (int t = 0; t < numTriangles; t++) {
+
+                int i1 = indices[3 * t];
+                int i2 = indices[3 * t + 1];
+                int i3 = indices[3 * t + 2];
+
+                // Flat Shading - Evaluate light model once and apply across triangle (triangle has single colour).
+                // Simply use colour of first triangle vertex.
+                double product = P2main.isLighting ? applyIlluminationModel(vertices, i1, i2, i3) : 1;
+                triangleColors[t] = SoftwareRasterizer.argb(
+                        (int) getIlluminatedColor(r[i1], product), // R.
+                        (int) getIlluminatedColor(g[i1], product), // G.
+                        (int) getIlluminatedColor(b[i1], product)); // B.
+
+            }
+            flatColors = triangleColors;
+
+        }
+
+        // Interpolation (Gouraud) Shading - Light model already evaluated at each vertex, interpolate over triangle surface.
+        rasterizer.beginFrame(frameWidth, frameHeight);
+        rasterizer.drawTriangles(vertices, indices, numTriangles, flatColors);
+
+        graphics2D.drawImage(rasterizer.getFrame(), 0, 0, null); // Blit the whole frame at once.
+
+    } // drawZBuffered().
+
+    /**
+     * Draw the outline of every triangle of the face. Nothing is filled, so the order of drawing does not matter.
+     *
+     * @param graphics2D   Graphics object to use to draw in this panel.
+     * @param vertices     Vertices in window co-ordinates.
+     * @param indices      Three vertex indices per triangle to draw.
+     * @param numTriangles Number of triangles to draw.
+     */
+    private void drawWireFrame(Graphics2D graphics2D, GeometryStore vertices, int[] indices, int numTriangles) {
+
+        float[] x = vertices.getX(), y = vertices.getY();
+
+        // Shows wire-frame, no fill. Can see all polygons and the density of them in localised areas for debugging.
+        graphics2D.setColor(Color.DARK_GRAY);
+        graphics2D.setStroke(new BasicStroke(0.1f));
+
+        int[] polygonX = new int[3], polygonY = new int[3];
+        for (int t = 0; t < numTriangles; t++) {
+
+            for (int corner = 0; corner < 3; corner++) {
+                polygonX[corner] = Math.round(x[indices[3 * t + corner]]);
+                polygonY[corner] = Math.round(y[indices[3 * t + corner]]);
+            }
+            graphics2D.drawPolygon(polygonX, polygonY, 3);
+
+        }
+
+    } // drawWireFrame().
+
+    /**
+     * Draw the face with painter's algorithm: triangles are sorted by depth and filled through Java2D from the back of
+     * the canvas to the front, so nearer triangles are painted over further ones. The whole mesh is sorted, so that
+     * the order carries over to the next frame even as rotation changes which triangles are culled.
+     *
+     * @param graphics2D   Graphics object to use to draw in this panel.
+     * @param vertices     Vertices in window co-ordinates, with their (lit, for Gouraud shading) colours.
+     * @param visible      Whether each triangle of the mesh is to be drawn (null to draw every triangle).
+     * @param numTriangles Number of triangles to draw.
+     */
+    private void drawPaintersAlgorithm(Graphics2D graphics2D, GeometryStore vertices, boolean[] visible,
+                                       int numTriangles) {
+
+        int[] indices = face3D.getIndices();
+
+        float[] x = vertices.getX(), y = vertices.getY(), z = vertices.getZ();
+        float[] r = vertices.getR(), g = vertices.getG(), b = vertices.getB();
 
         // Painter's Algorithm:
 
-        // Sort triangles by depth.
-        face3DPolygons.sort(Comparator.comparing(Triangle::getPainterZ));
+        // Sort triangles by depth (of their nearest vertex).
+        int[] drawOrder = depthSorter.sort(z, indices, face3D.getNumTriangles(), visible);
+        if (P2main.printStats) {
+            System.out.println("Depth sort: " + (depthSorter.wasLastSortRepaired() ? "previous order repaired." : "full sort."));
+        }
 
         // Draw triangles from back of canvas to front.
         // This seems like front to back, but the z-axis of the canvas is inverted (towards viewer, not away from).
-        for (int currTriangleIndex = 0; currTriangleIndex < face3DPolygons.size(); currTriangleIndex++) {
+        for (int k = 0; k < numTriangles; k++) {
 
-            Triangle currTriangle = face3D.getTriangle(currTriangleIndex);
-            Triangle currTriangleScaled = scaleTriangle(currTriangle); // Scale triangle to fit in render window.
+            int currTriangleIndex = drawOrder[k];
+            int i1 = indices[3 * currTriangleIndex];
+            int i2 = indices[3 * currTriangleIndex + 1];
+            int i3 = indices[3 * currTriangleIndex + 2];
 
             Polygon triangleAsPolygon = new Polygon();
 
-            triangleAsPolygon.addPoint(
-                    (int) Math.round(currTriangleScaled.getPoint1().getX()),
-                    (int) Math.round(currTriangleScaled.getPoint1().getY()));
-            triangleAsPolygon.addPoint(
-                    (int) Math.round(currTriangleScaled.getPoint2().getX()),
-                    (int) Math.round(currTriangleScaled.getPoint2().getY()));
-            triangleAsPolygon.addPoint(
-                    (int) Math.round(currTriangleScaled.getPoint3().getX()),
-                    (int) Math.round(currTriangleScaled.getPoint3().getY()));
+            triangleAsPolygon.addPoint(Math.round(x[i1]), Math.round(y[i1]));
+            triangleAsPolygon.addPoint(Math.round(x[i2]), Math.round(y[i2]));
+            triangleAsPolygon.addPoint(Math.round(x[i3]), Math.round(y[i3]));
 
             // Render face to canvas depending on specified type.
             if (P2main.renderingType == 0) { // Flat Shading.
 
                 // Flat Shading - Evaluate light model once and apply across triangle (triangle has single colour).
-                if (P2main.isLighting) applyIlluminationModel(currTriangleScaled);
-                graphics2D.setColor(currTriangleScaled.getPoint1Color()); // Simply use colour of first triangle vertex.
+                // Simply use colour of first triangle vertex.
+                double product = P2main.isLighting ? applyIlluminationModel(vertices, i1, i2, i3) : 1;
+                graphics2D.setColor(new Color(
+                        (int) getIlluminatedColor(r[i1], product), // R.
+                        (int) getIlluminatedColor(g[i1], product), // G.
+                        (int) getIlluminatedColor(b[i1], product))); // B.
                 graphics2D.fillPolygon(triangleAsPolygon);
 
             } else if (P2main.renderingType == 1) { // Interpolation Shading.
 
-                // Interpolation (Gouraud) Shading - Evaluate light model at each vertex and interpolate over triangle surface.
+                // Interpolation (Gouraud) Shading - Light model already evaluated at each vertex, interpolate over triangle surface.
                 // Gives artefacts that require further investigation but not a major issue.
+                Triangle currTriangleScaled = new Triangle(
+                        new Point3D(x[i1], y[i1], z[i1]),
+                        new Point3D(x[i2], y[i2], z[i2]),
+                        new Point3D(x[i3], y[i3], z[i3]));
+                currTriangleScaled.setColorTs(
+                        new Triplet(r[i1], g[i1], b[i1]),
+                        new Triplet(r[i2], g[i2], b[i2]),
+                        new Triplet(r[i3], g[i3], b[i3]));
+
                 graphics2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON); // Antialiasing.
-                if (P2main.isLighting) applyIlluminationModelGouraud(currTriangle, currTriangleScaled); // Gouraud Shading.
                 graphics2D.setPaint(currTriangleScaled); // Colouring using interpolation - use Paint type of triangle.
                 graphics2D.setStroke(new BasicStroke(2f)); // Helps with artefacts associated with the package.
                 graphics2D.drawPolygon(triangleAsPolygon); // Interpolation triangle fill doesn't do edges, so add them.
@@ -120,7 +325,7 @@ public class FaceUIPanel extends JPanel {
 
         }
 
-    } // draw3DFace().
+    } // drawPaintersAlgorithm().
 
     // Utility Functions:
 
@@ -134,194 +339,108 @@ public class FaceUIPanel extends JPanel {
         // Make sure there is a face to rotate.
         if (face3D != null) {
 
-            // Locate middle of the 3D face model so can rotate around center of the face.
-            double faceMiddleX = face3DMinX + ((face3DMaxX - face3DMinX) / 2);
-            double faceMiddleZ = face3DMinZ + ((face3DMaxZ - face3DMinZ) / 2);
-
-            // Have to translate all co-ordinate in all triangles of the 3D face.
-            for (Triangle currTriangle : face3D.getFaceData()) {
-                for (Point3D currPoint : currTriangle.getPoints()) {
-
-                    // Rotation of 45 degrees in the given direction.
-                    double rotationAngle;
-                    if (isLeftRotate) {
-                        rotationAngle = (Math.PI / 10); // 18 degrees clockwise to Y-axis.
-                    } else {
-                        rotationAngle = -(Math.PI / 10); // 18 degrees anti-clockwise to Y-axis.
-                    }
-
-                    // Need to translate to the middle of the face model as the origin.
-                    double translatedOriginX = currPoint.getX() - faceMiddleX;
-                    double translatedOriginZ = currPoint.getZ() - faceMiddleZ;
-
-                    // x' = x cos θ + z sin θ.
-                    double rotatedX = (translatedOriginX * Math.cos(rotationAngle)) + (translatedOriginZ * Math.sin(rotationAngle));
-                    // z' = -x sin θ + z cos θ.
-                    double rotatedZ = ((-translatedOriginX) * Math.sin(rotationAngle)) + (translatedOriginZ * Math.cos(rotationAngle));
-
-                    // Translate back from converted origin.
-                    double finalX = rotatedX + faceMiddleX;
-                    double finalZ = rotatedZ + faceMiddleZ;
-
-                    currPoint.setX(finalX);
-                    currPoint.setZ(finalZ);
-
-                }
+            // Rotation of 18 degrees in the given direction.
+            double rotationAngle;
+            if (isLeftRotate) {
+                rotationAngle = (Math.PI / 10); // 18 degrees clockwise to Y-axis.
+            } else {
+                rotationAngle = -(Math.PI / 10); // 18 degrees anti-clockwise to Y-axis.
             }
 
-            repaint(); // Draw the rotated face.
+            // Only the orientation changes - the face is transformed as it is drawn.
+            orientation.rotate(0, 1, 0, rotationAngle);
+
+            renderService.requestFrame(); // Draw the rotated face.
 
         }
 
     } // rotationAction().
 
     /**
-     * Apply Lambert's lighting model to illuminate a triangle.
+     * Perform a rotation of the rendered 3D face about any axis through its centre (e.g. when dragged).
      *
-     * @param triangle Triangle to apply lighting to.
+     * @param axisX X component of the axis, in view space (X right, Y up, Z towards the viewer).
+     * @param axisY Y component of the axis.
+     * @param axisZ Z component of the axis.
+     * @param angle Angle to rotate by, in radians.
      */
-    private void applyIlluminationModel(Triangle triangle) {
+    public void dragRotationAction(double axisX, double axisY, double axisZ, double angle) {
 
-        double intensityIncomingLight = 1.2; // Intensity of incoming light.
-        double diffuseCoefficient = 1; // Unity diffuse co-efficient.
-
-        Triplet lightVector = new Triplet(0, 0, -1); // Vector pointing towards the light source.
-        Triplet surfaceNormal = getTriangleSurfaceNormal(triangle); // Surface normal vector of triangle.
-
-        double product = dotProduct(surfaceNormal, lightVector);
-        product = Math.abs(product * diffuseCoefficient * intensityIncomingLight);
-
-        // Multiply product by each of the three colour channels at each vertex of the triangle.
-
-        double point1Red = getIlluminatedColor(triangle.getPoint1ColorT().getFirst(), product);
-        double point1Green =  getIlluminatedColor(triangle.getPoint1ColorT().getSecond(), product);
-        double point1Blue =  getIlluminatedColor(triangle.getPoint1ColorT().getThird(), product);
-        Triplet illuminatedPoint1Color = new Triplet(point1Red, point1Green, point1Blue); // B.
-
-        double point2Red = getIlluminatedColor(triangle.getPoint2ColorT().getFirst(), product);
-        double point2Green =  getIlluminatedColor(triangle.getPoint2ColorT().getSecond(), product);
-        double point2Blue =  getIlluminatedColor(triangle.getPoint2ColorT().getThird(), product);
-        Triplet illuminatedPoint2Color = new Triplet(point2Red, point2Green, point2Blue); // B.
-
-        double point3Red = getIlluminatedColor(triangle.getPoint3ColorT().getFirst(), product);
-        double point3Green =  getIlluminatedColor(triangle.getPoint3ColorT().getSecond(), product);
-        double point3Blue =  getIlluminatedColor(triangle.getPoint3ColorT().getThird(), product);
-        Triplet illuminatedPoint3Color = new Triplet(point3Red, point3Green, point3Blue); // B.
-
-        // Update colours to account for illumination.
-        triangle.setColorTs(illuminatedPoint1Color, illuminatedPoint2Color, illuminatedPoint3Color);
+        if (face3D != null) {
+            orientation.rotate(axisX, axisY, axisZ, angle);
+            renderService.requestFrame(); // Draw the rotated face.
+        }
 
-    } // applyIlluminationModel().
+    } // dragRotationAction().
 
     /**
-     * Apply Lambert's illumination model to a triangle of the 3D face using Gouraud shading.
+     * Apply Lambert's lighting model to illuminate a triangle.
      *
-     * @param triangle Triangle to apply illumination model to.
-     * @param scaledTriangle Scaled version of triangle to apply illumination model to.
+     * @param vertices Vertices of the face.
+     * @param i1       Index of the first vertex of the triangle.
+     * @param i2       Index of the second vertex of the triangle.
+     * @param i3       Index of the third vertex of the triangle.
+     * @return Product to multiply each of the three colour channels by.
      */
-    private void applyIlluminationModelGouraud(Triangle triangle, Triangle scaledTriangle) {
+    private double applyIlluminationModel(GeometryStore vertices, int i1, int i2, int i3) {
 
         double intensityIncomingLight = 1.2; // Intensity of incoming light.
         double diffuseCoefficient = 1; // Unity diffuse co-efficient.
 
-        Triplet lightVector = new Triplet(0, 0, -1); // Vector pointing towards the light source.
-
-        // Get lists of adjacent triangles for each of the points in this triangle.
-        HashMap<Integer, ArrayList<Triangle>> adjacentTriangles = getAdjacentTrianglesToPoints(triangle);
-
-        // Surface lighting applied to the first point:
-        Triplet point1AvgSurfaceNormal = getAverageSurfaceNormal(adjacentTriangles.get(1));
-        double product = dotProduct(point1AvgSurfaceNormal, lightVector);
-        product = Math.abs(product * diffuseCoefficient * intensityIncomingLight);
-
-        double point1Red = getIlluminatedColor(triangle.getPoint1ColorT().getFirst(), product);
-        double point1Green =  getIlluminatedColor(triangle.getPoint1ColorT().getSecond(), product);
-        double point1Blue =  getIlluminatedColor(triangle.getPoint1ColorT().getThird(), product);
-        Triplet illuminatedPoint1Color = new Triplet(point1Red, point1Green, point1Blue);
-
-        // Surface lighting applied to the second point:
-        Triplet point2AvgSurfaceNormal = getAverageSurfaceNormal(adjacentTriangles.get(2));
-        product = dotProduct(point2AvgSurfaceNormal, lightVector);
-        product = Math.abs(product * diffuseCoefficient * intensityIncomingLight);
-
-        double point2Red = getIlluminatedColor(triangle.getPoint2ColorT().getFirst(), product);
-        double point2Green =  getIlluminatedColor(triangle.getPoint2ColorT().getSecond(), product);
-        double point2Blue =  getIlluminatedColor(triangle.getPoint2ColorT().getThird(), product);
-        Triplet illuminatedPoint2Color = new Triplet(point2Red, point2Green, point2Blue);
-
-        // Surface lighting applied to the third point:
-        Triplet point3AvgSurfaceNormal = getAverageSurfaceNormal(adjacentTriangles.get(3));
-        product = dotProduct(point3AvgSurfaceNormal, lightVector);
-        product = Math.abs(product * diffuseCoefficient * intensityIncomingLight);
-
-        double point3Red = getIlluminatedColor(triangle.getPoint3ColorT().getFirst(), product);
-        double point3Green =  getIlluminatedColor(triangle.getPoint3ColorT().getSecond(), product);
-        double point3Blue =  getIlluminatedColor(triangle.getPoint3ColorT().getThird(), product);
-        Triplet illuminatedPoint3Color = new Triplet(point3Red, point3Green, point3Blue);
-
-        // Update colours to account for illumination.
-        scaledTriangle.setColorTs(illuminatedPoint1Color, illuminatedPoint2Color, illuminatedPoint3Color);
+        // Light vector points towards the light source, (0, 0, -1), so N.L is simply -N.z.
+        double product = -getTriangleSurfaceNormalZ(vertices, i1, i2, i3);
+        return Math.abs(product * diffuseCoefficient * intensityIncomingLight);
 
-    } // applyIlluminationModelGouraud().
+    } // applyIlluminationModel().
 
     /**
-     * Given a set of triangles, calculate the average surface normal of the triangles.
+     * Apply Lambert's illumination model to every vertex of the triangles to draw, for Gouraud shading. The normal at
+     * each vertex is the area-weighted average surface normal of the triangles adjacent to it, computed once per face
+     * and rotated to the view here. Vertices only used by culled triangles are not lit, and a vertex shared by several
+     * triangles is lit once (it is marked with the frame number when lit).
      *
-     * @param triangles Triangles to get average surface normal of.
-     * @return Triplet representing the average surface normal of the triangles.
+     * @param face         Face to light (normals are taken from its own, unscaled, co-ordinates, then rotated to the view).
+     * @param out          Vertices whose colours are replaced by the illuminated colours of the face.
+     * @param indices      Three vertex indices per triangle to draw.
+     * @param numTriangles Number of triangles to draw.
      */
-    private Triplet getAverageSurfaceNormal(ArrayList<Triangle> triangles) {
-
-        double averageX = 0;
-        double averageY = 0;
-        double averageZ = 0;
+    private void applyIlluminationModelGouraud(Face3D face, GeometryStore out, int[] indices, int numTriangles) {
 
-        for (Triangle currTriangle : triangles) {
-
-            Triplet currSurfaceNormal = getTriangleSurfaceNormal(currTriangle);
+        double intensityIncomingLight = 1.2; // Intensity of incoming light.
+        double diffuseCoefficient = 1; // Unity diffuse co-efficient.
 
-            averageX += currSurfaceNormal.getFirst();
-            averageY += currSurfaceNormal.getSecond();
-            averageZ += currSurfaceNormal.getThird();
+        GeometryStore geometry = face.getGeometry();
+        float[] normals = face.getVertexNormals();
 
+        if (vertexLitFrame == null || vertexLitFrame.length < face.getNumVertices()) {
+            vertexLitFrame = new int[face.getNumVertices()];
+            litFrame = 0;
+        }
+        if (++litFrame == 0) { // Frame numbers have wrapped, so forget every mark.
+            Arrays.fill(vertexLitFrame, 0);
+            litFrame = 1;
         }
 
-        averageX = averageX / triangles.size();
-        averageY = averageY / triangles.size();
-        averageZ = averageZ / triangles.size();
+        float[] r = geometry.getR(), g = geometry.getG(), b = geometry.getB();
+        for (int k = 0; k < 3 * numTriangles; k++) {
 
-        Triplet avgSurfaceNormal = new Triplet(averageX, averageY, averageZ);
+            int v = indices[k];
+            if (vertexLitFrame[v] == litFrame) continue; // Already lit for another triangle.
+            vertexLitFrame[v] = litFrame;
 
-        return avgSurfaceNormal;
+            // Light vector points towards the light source, (0, 0, -1), so N.L is simply -N.z of the rotated normal.
+            double normalZ = (viewRotation[6] * normals[3 * v]) + (viewRotation[7] * normals[3 * v + 1])
+                    + (viewRotation[8] * normals[3 * v + 2]);
+            double product = Math.abs(-normalZ * diffuseCoefficient * intensityIncomingLight);
 
-    } // getAverageSurfaceNormal().
+            out.setColor(v,
+                    (float) getIlluminatedColor(r[v], product), // R.
+                    (float) getIlluminatedColor(g[v], product), // G.
+                    (float) getIlluminatedColor(b[v], product)); // B.
 
-    /**
-     * Get the set of triangles adjacent to a point.
-     *
-     * @param triangle Triangle to get adjacent triangles of its points.
-     * @return Mapping of integers (the points) to lists of of triangles adjacent to the point.
-     */
-    private HashMap<Integer, ArrayList<Triangle>> getAdjacentTrianglesToPoints(Triangle triangle) {
-
-        HashMap<Integer, ArrayList<Triangle>> adjacentTriangles = new HashMap<>();
-        adjacentTriangles.put(1, new ArrayList<>());
-        adjacentTriangles.put(2, new ArrayList<>());
-        adjacentTriangles.put(3, new ArrayList<>());
-
-        for (Triangle currTriangle : face3D.getFaceData()) {
-            if (currTriangle.contains(triangle.getPoint1())) {
-                adjacentTriangles.get(1).add(currTriangle);
-            } else if (currTriangle.contains(triangle.getPoint2())) {
-                adjacentTriangles.get(2).add(currTriangle);
-            } else if (currTriangle.contains(triangle.getPoint3())) {
-                adjacentTriangles.get(3).add(currTriangle);
-            }
         }
 
-        return adjacentTriangles;
-
-    } // getTrianglesUsingPoint().
+    } // applyIlluminationModelGouraud().
 
     /**
      * Applies a product used to illuminate a colour whilst maintaining the accepted RGB range.
@@ -346,142 +465,247 @@ public class FaceUIPanel extends JPanel {
     } // getIlluminatedColor().
 
     /**
-     * Calculate the normalised surface normal of a triangle as a vector.
+     * Calculate the Z component of the normalised surface normal of a triangle.
      *
-     * @param triangle Triangle to calculate surface normal for.
-     * @return Vector (Triplet) representing the surface normal.
+     * @param vertices Vertices of the face.
+     * @param i1       Index of the first vertex of the triangle.
+     * @param i2       Index of the second vertex of the triangle.
+     * @param i3       Index of the third vertex of the triangle.
+     * @return Z component of the unit surface normal (NaN for a degenerate triangle).
      */
-    private Triplet getTriangleSurfaceNormal(Triangle triangle) {
+    private double getTriangleSurfaceNormalZ(GeometryStore vertices, int i1, int i2, int i3) {
 
-        Triplet U = new Triplet(
-                triangle.getPoint2().getX() - triangle.getPoint1().getX(), // x.
-                triangle.getPoint2().getY() - triangle.getPoint1().getY(), // y.
-                triangle.getPoint2().getZ() - triangle.getPoint1().getZ()); // z.
+        float[] x = vertices.getX(), y = vertices.getY(), z = vertices.getZ();
 
-        Triplet V = new Triplet(
-                triangle.getPoint3().getX() - triangle.getPoint1().getX(), // x.
-                triangle.getPoint3().getY() - triangle.getPoint1().getY(), // y.
-                triangle.getPoint3().getZ() - triangle.getPoint1().getZ()); // z.
+        // U = p2 - p1, V = p3 - p1.
+        double uX = x[i2] - x[i1], uY = y[i2] - y[i1], uZ = z[i2] - z[i1];
+        double vX = x[i3] - x[i1], vY = y[i3] - y[i1], vZ = z[i3] - z[i1];
 
-        // normalX = (U.y * V.z) - (U.z * V.y).
-        double normalX = (U.getSecond() * V.getThird()) - (U.getThird() * V.getSecond());
-        // normalY = (U.z * V.x) - (U.x * V.z).
-        double normalY = (U.getThird() * V.getFirst()) - (U.getFirst() * V.getThird());
-        // normalZ = (U.x * V.y) - (U.y * V.x).
-        double normalZ = (U.getFirst() * V.getSecond()) - (U.getSecond() * V.getFirst());
+        double normalX = (uY * vZ) - (uZ * vY); // normalX = (U.y * V.z) - (U.z * V.y).
+        double normalY = (uZ * vX) - (uX * vZ); // normalY = (U.z * V.x) - (U.x * V.z).
+        double normalZ = (uX * vY) - (uY * vX); // normalZ = (U.x * V.y) - (U.y * V.x).
 
         // Normalise the surface normal vector (make it unit length).
-        double vectorMag = Math.sqrt(Math.pow(normalX, 2) + Math.pow(normalY, 2) + Math.pow(normalZ, 2));
-        normalX = normalX / vectorMag;
-        normalY = normalY / vectorMag;
-        normalZ = normalZ / vectorMag;
-
-        Triplet surfaceNormal = new Triplet(normalX, normalY, normalZ);
-
-        return surfaceNormal;
+        double vectorMag = Math.sqrt((normalX * normalX) + (normalY * normalY) + (normalZ * normalZ));
+        return (vectorMag > 0) ? normalZ / vectorMag : Double.NaN;
 
-    } // getTriangleSurfaceNormal().
+    } // getTriangleSurfaceNormalZ().
 
     /**
-     * Calculate the dot product of two 1x3 vectors.
+     * Rotate every vertex of the 3D face to the current orientation (about the middle of the face) and scale it to a
+     * range fitting the current rendering window. Rotation, scaling and the flip to window Y are folded into one affine
+     * transform per frame, so each vertex takes 9 multiplies and the face itself is never changed.
      *
-     * @param u First vector in dot product.
-     * @param v Second vector in dot product.
-     * @return Dot product of vectors u and v.
+     * @param geometry Vertices of the face, in face co-ordinates.
+     * @return Vertices in window co-ordinates, with the colours of the face (reused between calls).
      */
-    private double dotProduct(Triplet u, Triplet v) {
+    private GeometryStore scaleVertices(GeometryStore geometry) {
 
-        // u . v = (u.x * v.x) + (u.y * v.y) + (u.z * v.z)
-        double dotProduct = (u.getFirst() * v.getFirst()) + (u.getSecond() * v.getSecond()) + (u.getThird() * v.getThird());
-        return dotProduct;
+        int numVertices = geometry.getNumVertices();
+        if (screenVertices == null || screenVertices.getNumVertices() != numVertices) {
+            screenVertices = new GeometryStore(numVertices);
+        }
 
-    } // dotProduct().
+        // Target range to scale to.
+        // No needed to scale Z, but will do so for generality. Use target X range for, say, rotating around the Y axis.
+        double windowMinX = 0, windowMinY = 0, windowMinZ = windowMinX;
+        double windowMaxX = frameWidth, windowMaxY = frameHeight, windowMaxZ = windowMaxX;
+
+        // Scale factors are the same for every vertex.
+        double scaleX = (windowMaxX - windowMinX) / (face3DMaxX - face3DMinX);
+        double scaleY = (windowMaxY - windowMinY) / (face3DMaxY - face3DMinY);
+        double scaleZ = (windowMaxZ - windowMinZ) / (face3DMaxZ - face3DMinZ);
+
+        // Locate middle of the 3D face model so it rotates around the center of the face.
+        double faceMiddleX = face3DMinX + ((face3DMaxX - face3DMinX) / 2);
+        double faceMiddleY = face3DMinY + ((face3DMaxY - face3DMinY) / 2);
+        double faceMiddleZ = face3DMinZ + ((face3DMaxZ - face3DMinZ) / 2);
+
+        // Fused transform, window = M * face + T: rotate about the middle, then scale (down is positive Y in window).
+        double[] rotation = viewRotation;
+        double mXX = rotation[0] * scaleX, mXY = rotation[1] * scaleX, mXZ = rotation[2] * scaleX;
+        double mYX = -rotation[3] * scaleY, mYY = -rotation[4] * scaleY, mYZ = -rotation[5] * scaleY;
+        double mZX = rotation[6] * scaleZ, mZY = rotation[7] * scaleZ, mZZ = rotation[8] * scaleZ;
+        double tX = ((faceMiddleX - face3DMinX) * scaleX) + windowMinX
+                - ((mXX * faceMiddleX) + (mXY * faceMiddleY) + (mXZ * faceMiddleZ));
+        double tY = windowMaxY - (((faceMiddleY - face3DMinY) * scaleY) + windowMinY)
+                - ((mYX * faceMiddleX) + (mYY * faceMiddleY) + (mYZ * faceMiddleZ));
+        double tZ = ((faceMiddleZ - face3DMinZ) * scaleZ) + windowMinZ
+                - ((mZX * faceMiddleX) + (mZY * faceMiddleY) + (mZZ * faceMiddleZ));
+
+        float[] x = geometry.getX(), y = geometry.getY(), z = geometry.getZ();
+        float[] screenX = screenVertices.getX(), screenY = screenVertices.getY(), screenZ = screenVertices.getZ();
+
+        for (int v = 0; v < numVertices; v++) {
+            screenX[v] = (float) ((mXX * x[v]) + (mXY * y[v]) + (mXZ * z[v]) + tX);
+            screenY[v] = (float) ((mYX * x[v]) + (mYY * y[v]) + (mYZ * z[v]) + tY);
+            screenZ[v] = (float) ((mZX * x[v]) + (mZY * y[v]) + (mZZ * z[v]) + tZ);
+        }
+
+        // Colours are unchanged by the transform.
+        System.arraycopy(geometry.getR(), 0, screenVertices.getR(), 0, numVertices);
+        System.arraycopy(geometry.getG(), 0, screenVertices.getG(), 0, numVertices);
+        System.arraycopy(geometry.getB(), 0, screenVertices.getB(), 0, numVertices);
+
+        return screenVertices;
+
+    } // scaleVertices().
 
     /**
-     * Scale a given triangle within the 3D face to a range fitting the current rendering window.
+     * Culling stage: keep the triangles facing the viewer. With an orthographic view along Z, a triangle faces the
+     * viewer when its corners wind the same way on screen as front faces do, so only the sign of its screen area is
+     * needed. Triangles seen edge-on have no area and are culled too.
      *
-     * @param triangleToScale Triangle to be scaled.
-     * @return New triangle object, with scaled co-ordinates and retained colour information.
+     * @param vertices     Vertices in window co-ordinates.
+     * @param indices      Three vertex indices per triangle of the face.
+     * @param numTriangles Number of triangles of the face.
+     * @return Number of front-facing triangles, whose vertex indices are now at the start of frontIndices (and which
+     * are marked in frontFacing).
      */
-    private Triangle scaleTriangle(Triangle triangleToScale) {
+    private int cullBackFaces(GeometryStore vertices, int[] indices, int numTriangles) {
+
+        if (frontIndices == null || frontIndices.length < indices.length) frontIndices = new int[indices.length];
+        if (frontFacing == null || frontFacing.length < numTriangles) frontFacing = new boolean[numTriangles];
 
-        // Scale points inside of triangle to the range required by the window.
-        Point3D point1Scaled = scalePoint(triangleToScale.getPoint1());
-        Point3D point2Scaled = scalePoint(triangleToScale.getPoint2());
-        Point3D point3Scaled = scalePoint(triangleToScale.getPoint3());
+        if (frontNormalSign == 0) { // Winding of front faces is unknown, so keep every triangle.
+            System.arraycopy(indices, 0, frontIndices, 0, 3 * numTriangles);
+            Arrays.fill(frontFacing, 0, numTriangles, true);
+            return numTriangles;
+        }
+
+        float[] x = vertices.getX(), y = vertices.getY();
+
+        int numFront = 0;
+        for (int t = 0; t < numTriangles; t++) {
 
-        // Create new triangle with the scaled points, preserving the colour information.
-        Triangle scaledTriangle = new Triangle(point1Scaled, point2Scaled, point3Scaled);
-        scaledTriangle.setColorTs(triangleToScale.getPoint1ColorT(), triangleToScale.getPoint2ColorT(),
-                triangleToScale.getPoint3ColorT());
+            int i1 = indices[3 * t], i2 = indices[3 * t + 1], i3 = indices[3 * t + 2];
 
-        return scaledTriangle;
+            // Window Y is flipped, so a positive screen area is a negative normal Z in view space.
+            float area = ((x[i2] - x[i1]) * (y[i3] - y[i1])) - ((y[i2] - y[i1]) * (x[i3] - x[i1]));
+            frontFacing[t] = area * frontNormalSign < 0;
+            if (!frontFacing[t]) continue; // Back-facing (or edge-on).
 
-    } // scaleTriangle().
+            frontIndices[3 * numFront] = i1;
+            frontIndices[3 * numFront + 1] = i2;
+            frontIndices[3 * numFront + 2] = i3;
+            numFront++;
+
+        }
+
+        return numFront;
+
+    } // cullBackFaces().
 
     /**
-     * Scale a given point within a triangle polygon of the 3D face to fit the rendering window.
+     * Work out which way front faces wind, from the face's own co-ordinates (in which it looks at the viewer, as it is
+     * only rotated when drawn): the Z of the surface normals of its triangles, weighted by area, sums to the front side.
+     * Vertex order is only assumed to be consistent across the mesh, not to be either way round.
      *
-     * @param pointToScale Point to scale.
-     * @return New scaled point.
+     * @param face Face, in its own co-ordinates.
+     * @return Sign of Z of the surface normal of front faces (0 if it cannot be told).
      */
-    private Point3D scalePoint(Point3D pointToScale) {
+    private static int getFrontNormalSign(Face3D face) {
 
-        // Target range to scale to.
-        // No needed to scale Z, but will do so for generality. Use target X range for, say, rotating around the Y axis.
-        double windowMinX = 0, windowMinY = 0, windowMinZ = windowMinX;
-        double windowMaxX = this.getWidth(), windowMaxY = this.getHeight(), windowMaxZ = windowMaxX;
+        float[] x = face.getGeometry().getX(), y = face.getGeometry().getY();
+        int[] indices = face.getIndices();
 
-        // Scaling of the co-ordinate values.
-        double scaledX = (((pointToScale.getX() - face3DMinX) / (face3DMaxX - face3DMinX)) * (windowMaxX - windowMinX)) + (windowMinX);
-        double scaledY = (((pointToScale.getY() - face3DMinY) / (face3DMaxY - face3DMinY)) * (windowMaxY - windowMinY)) + (windowMinY);
-        scaledY = windowMaxY - scaledY; // Down is positive Y direction in window, so make the face right way up.
-        double scaledZ = (((pointToScale.getZ() - face3DMinZ) / (face3DMaxZ - face3DMinZ)) * (windowMaxZ - windowMinZ)) + (windowMinZ);
+        double normalZSum = 0;
+        for (int t = 0; t < face.getNumTriangles(); t++) {
+            int i1 = indices[3 * t], i2 = indices[3 * t + 1], i3 = indices[3 * t + 2];
+            normalZSum += ((x[i2] - x[i1]) * (y[i3] - y[i1])) - ((y[i2] - y[i1]) * (x[i3] - x[i1]));
+        }
 
-        // Create scaled point and return.
-        Point3D scaledPoint = new Point3D(scaledX, scaledY, scaledZ);
-        return scaledPoint;
+        return (int) Math.signum(normalZSum);
 
-    } // scalePoint().
+    } // getFrontNormalSign().
 
     /**
      * Retrieve the ranges of the X, Y, and Z co-ordinates in the 3D face so that co-ordinates can be scaled to the
      * current rendering window size.
      *
-     * @param face3DPolygons Set of triangles in the 3D face, which comprise the co-ordinates.
+     * @param geometry Vertices of the 3D face.
      */
-    private void getFace3DRanges(ArrayList<Triangle> face3DPolygons) {
-
-        // For every triangle in the face...
-        for (Triangle currTriangle : face3DPolygons) {
+    private void getFace3DRanges(GeometryStore geometry) {
 
-            // .. and for every point in the triangles...
-            for (Point3D currPoint : currTriangle.getPoints()) {
+        float[] x = geometry.getX(), y = geometry.getY(), z = geometry.getZ();
 
-                // ... update the value ranges. This could probably be improved.
-                if (currPoint.getX() < face3DMinX) face3DMinX = currPoint.getX();
-                if (currPoint.getX() > face3DMaxX) face3DMaxX = currPoint.getX();
-                if (currPoint.getY() < face3DMinY) face3DMinY = currPoint.getY();
-                if (currPoint.getY() > face3DMaxY) face3DMaxY = currPoint.getY();
-                if (currPoint.getZ() < face3DMinZ) face3DMinZ = currPoint.getZ();
-                if (currPoint.getZ() > face3DMaxZ) face3DMaxZ = currPoint.getZ();
+        // For every vertex in the face, update the value ranges.
+        for (int v = 0; v < geometry.getNumVertices(); v++) {
 
-            }
+            if (x[v] < face3DMinX) face3DMinX = x[v];
+            if (x[v] > face3DMaxX) face3DMaxX = x[v];
+            if (y[v] < face3DMinY) face3DMinY = y[v];
+            if (y[v] > face3DMaxY) face3DMaxY = y[v];
+            if (z[v] < face3DMinZ) face3DMinZ = z[v];
+            if (z[v] > face3DMaxZ) face3DMaxZ = z[v];
 
         }
 
     } // getFace3DRanges().
 
     /**
-     * @param face3D Set face3D.
+     * Draw a new face. The face is obtained on the render worker, so it may be slow to produce (e.g. interpolated)
+     * without blocking the caller.
+     *
+     * @param face3DSupplier Produces the face to draw, on the render worker (null, or an UncheckedIOException, to keep
+     *                       the current face).
      */
-    public void render3DFace(Face3D face3D) {
+    public void render3DFace(Supplier<Face3D> face3DSupplier) {
 
-        this.face3D = face3D;
-        getFace3DRanges(face3D.getFaceData()); // Update ranges of the co-ordinates for rendering within window dimensions.
-        repaint();
+        renderService.submit(() -> {
+
+            Face3D face3D;
+            try {
+                face3D = face3DSupplier.get();
+            } catch (UncheckedIOException e) { // Face data unreadable, so keep showing the current face.
+                System.out.println("FaceUIPanel.render3DFace() Exception: " + e.getCause().getMessage());
+                return;
+            }
+            if (face3D == null) return;
+
+            getFace3DRanges(face3D.getGeometry()); // Update ranges of the co-ordinates for rendering within window dimensions.
+            frontNormalSign = getFrontNormalSign(face3D); // A face looks at the viewer in its own co-ordinates.
+            this.face3D = face3D;
+            facePending = true;
+
+        });
 
     } // render3DFace().
 
+    /**
+     * @return Number of triangles drawn in the last frame.
+     */
+    public int getDrawnTriangles() {
+        return drawnTriangles;
+    } // getDrawnTriangles().
+
+    /**
+     * @return Number of back-facing triangles culled in the last frame.
+     */
+    public int getCulledTriangles() {
+        return culledTriangles;
+    } // getCulledTriangles().
+
+    /**
+     * @return Number of new faces drawn into finished frames so far.
+     */
+    public int getFacesPresented() {
+        return facesPresented;
+    } // getFacesPresented().
+
+    /**
+     * @return System.nanoTime() when the last new face finished drawing (0 before the first face).
+     */
+    public long getLastFacePresentedNanos() {
+        return lastFacePresentedNanos;
+    } // getLastFacePresentedNanos().
+
+    /**
+     * @return Whether a face or frame is still waiting to be drawn, or being drawn.
+     */
+    public boolean isRendering() {
+        return renderService.isBusy();
+    } // isRendering().
+
 
 } // FaceUIPanel{}.
@@ -0,0 +1,114 @@
+/**
+ * Primitive struct-of-arrays storage for the vertices of a face: one contiguous float array per co-ordinate and per
+ * colour channel, so per-vertex loops (interpolation, transformation, lighting, rasterization) stream through
+ * memory without any per-vertex objects, boxing or allocation.
+ *
+ * @author 170004680
+ */
+public class GeometryStore {
+
+
+    private final int numVertices; // Number of vertices stored.
+
+    private final float[] x; // X co-ordinate of each vertex.
+    private final float[] y; // Y co-ordinate of each vertex.
+    private final float[] z; // Z co-ordinate of each vertex.
+    private final float[] r; // Red channel of each vertex (0 - 255).
+    private final float[] g; // Green channel of each vertex (0 - 255).
+    private final float[] b; // Blue channel of each vertex (0 - 255).
+
+
+    /**
+     * Constructor: Allocate zeroed storage.
+     *
+     * @param numVertices Number of vertices to store.
+     */
+    public GeometryStore(int numVertices) {
+
+        this.numVertices = numVertices;
+
+        this.x = new float[numVertices];
+        this.y = new float[numVertices];
+        this.z = new float[numVertices];
+        this.r = new float[numVertices];
+        this.g = new float[numVertices];
+        this.b = new float[numVertices];
+
+    } // GeometryStore().
+
+    // Utility Functions:
+
+    /**
+     * @return Number of bytes held by the arrays of this store.
+     */
+    public long getBytes() {
+        return 6L * 4L * numVertices;
+    } // getBytes().
+
+    // Getters and Setters:
+
+    /**
+     * @param v Index of the vertex.
+     * @param r Red channel.
+     * @param g Green channel.
+     * @param b Blue channel.
+     */
+    public void setColor(int v, float r, float g, float b) {
+
+        this.r[v] = r;
+        this.g[v] = g;
+        this.b[v] = b;
+
+    } // setColor().
+
+    /**
+     * @return numVertices.
+     */
+    public int getNumVertices() {
+        return numVertices;
+    } // getNumVertices().
+
+    /**
+     * @return X co-ordinates, indexed by vertex (the backing array, not a copy).
+     */
+    public float[] getX() {
+        return x;
+    } // getX().
+
+    /**
+     * @return Y co-ordinates, indexed by vertex (the backing array, not a copy).
+     */
+    public float[] getY() {
+        return y;
+    } // getY().
+
+    /**
+     * @return Z co-ordinates, indexed by vertex (the backing array, not a copy).
+     */
+    public float[] getZ() {
+        return z;
+    } // getZ().
+
+    /**
+     * @return Red channels, indexed by vertex (the backing array, not a copy).
+     */
+    public float[] getR() {
+        return r;
+    } // getR().
+
+    /**
+     * @return Green channels, indexed by vertex (the backing array, not a copy).
+     */
+    public float[] getG() {
+        return g;
+    } // getG().
+
+    /**
+     * @return Blue channels, indexed by vertex (the backing array, not a copy).
+     */
+    public float[] getB() {
+        return b;
+    } // getB().
+
+
+} // GeometryStore{}.
@@ -0,0 +1,148 @@
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Schedules interpolations so that only the latest requested face is ever produced.
+ * <p>
+ * Each request is numbered. Submitting a request supersedes every earlier one: an interpolation in flight sees this
+ * the next time it polls for cancellation (every few thousand vertices, or every reference face when streaming) and
+ * stops, and requests that have not started yet are dropped when they come to run. Interpolations are expected to run
+ * one at a time on a single worker thread (e.g. the render worker), while requests may be submitted from any thread.
+ *
+ * @author 170004680
+ */
+public class InterpolationScheduler {
+
+
+    private final Face3DReader face3DReader; // Interpolates faces.
+    private final AtomicLong latestRequest = new AtomicLong(); // Number of the latest request (0 before the first).
+
+    // Metrics (updated by the worker, read from any thread).
+    private final AtomicLong submitted = new AtomicLong(); // Requests submitted.
+    private final AtomicLong cancelled = new AtomicLong(); // Requests stopped part way through.
+    private final AtomicLong dropped = new AtomicLong(); // Requests superseded before they started.
+    private final AtomicLong completed = new AtomicLong(); // Requests that produced a face.
+    private volatile long lastCompletedNanos; // Time taken by the last request that produced a face.
+
+
+    /**
+     * Constructor:
+     *
+     * @param face3DReader Reader used to interpolate faces.
+     */
+    public InterpolationScheduler(Face3DReader face3DReader) {
+
+        this.face3DReader = face3DReader;
+
+    } // InterpolationScheduler().
+
+    // Utility Functions:
+
+    /**
+     * Request an interpolation, superseding all earlier requests.
+     *
+     * @param interpolationWeights Weights to use for the interpolation. Order such that i-th weight is for (i + 1)th face file.
+     * @return Task that interpolates the face when run on the worker, giving null if superseded first.
+     */
+    public Supplier<Face3D> submit(ArrayList<Double> interpolationWeights) {
+        return schedule(isCancelled -> face3DReader.getInterpolatedFace(interpolationWeights, isCancelled));
+    } // submit().
+
+    /**
+     * Request a face from a grid cache, superseding all earlier requests.
+     *
+     * @param faceGridCache Grid cache to blend the face from.
+     * @param point         Point in the reference face polygon to get the face at.
+     * @return Task that blends the face when run on the worker, giving null if superseded first.
+     */
+    public Supplier<Face3D> submit(FaceGridCache faceGridCache, Point2D point) {
+        return schedule(isCancelled -> faceGridCache.getFace(point, isCancelled));
+    } // submit().
+
+    /**
+     * Number a request, superseding all earlier requests.
+     *
+     * @param interpolation Produces the face, polling the given check for cancellation.
+     * @return Task that produces the face when run on the worker, giving null if superseded first.
+     */
+    private Supplier<Face3D> schedule(Function<BooleanSupplier, Face3D> interpolation) {
+
+        long request = latestRequest.incrementAndGet();
+        submitted.incrementAndGet();
+
+        return () -> {
+
+            if (request != latestRequest.get()) { // A later request has already been made.
+                dropped.incrementAndGet();
+                return null;
+            }
+
+            long start = System.nanoTime();
+            try {
+
+                Face3D face3D = interpolation.apply(() -> request != latestRequest.get());
+
+                lastCompletedNanos = System.nanoTime() - start;
+                completed.incrementAndGet();
+                return face3D;
+
+            } catch (CancellationException e) {
+                cancelled.incrementAndGet();
+                return null;
+            }
+
+        };
+
+    } // schedule().
+
+    /**
+     * Supersede all requests so far, e.g. because a face that needs no interpolation is to be drawn instead.
+     */
+    public void cancel() {
+        latestRequest.incrementAndGet();
+    } // cancel().
+
+    // Getters and Setters:
+
+    /**
+     * @return Number of requests submitted.
+     */
+    public long getSubmitted() {
+        return submitted.get();
+    } // getSubmitted().
+
+    /**
+     * @return Number of requests stopped part way through because a later one was made.
+     */
+    public long getCancelled() {
+        return cancelled.get();
+    } // getCancelled().
+
+    /**
+     * @return Number of requests dropped before they started because a later one was made.
+     */
+    public long getDropped() {
+        return dropped.get();
+    } // getDropped().
+
+    /**
+     * @return Number of requests that produced a face.
+     */
+    public long getCompleted() {
+        return completed.get();
+    } // getCompleted().
+
+    /**
+     * @return Time taken by the last request that produced a face, in milliseconds.
+     */
+    public double getLastCompletedMillis() {
+        return lastCompletedNanos / 1e6;
+    } // getLastCompletedMillis().
+
+
+} // InterpolationScheduler{}.
@@ -8,6 +8,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.TimerTask;
 import java.util.Timer;
+import java.util.function.Supplier;
 
 /**
  * MainUIPanel: Handles the UI for the 2D implementation (basic specification).
@@ -18,7 +19,9 @@ class MainUIPanel extends JPanel {
 
 
     private final Face3DReader face3DReader; // Reader for 3D faces from data files.
-    private Face3D currentRenderedFace; // Current face being rendered.
+    private final InterpolationScheduler interpolationScheduler; // Interpolates only the latest clicked point.
+    private final FaceGridCache faceGridCache; // Faces at grid nodes to blend clicked points from, or null if disabled.
+    private volatile Face3D currentRenderedFace; // Current face being rendered (set on the render worker).
     private final int numReferenceFaces; // Number of reference faces to use.
     // Set of points defining the polygon with reference faces as vertices. Let index i be the i list in referenceFaces.
     private final ArrayList<Point2D> referenceFacesPolygonPoints;
@@ -31,6 +34,15 @@ class MainUIPanel extends JPanel {
 
     private Timer autoRotateTimer = null; // Timer used for auto-rotation of 3D face model.
 
+    private static final int DEFAULT_REFRESH_RATE = 60; // Frames per second to morph at if the display does not say.
+    private final int refreshRate; // Frames per second of the display, which drag events are coalesced to.
+    private final javax.swing.Timer dragTimer; // Takes the latest dragged point once per display frame while dragging.
+    private Point pendingDragPoint; // Latest dragged point not yet drawn, or null if the face is up to date.
+    private long dragStartNanos; // System.nanoTime() when the current drag began.
+    private int dragStartFaces; // Faces the renderer had presented when the current drag began.
+    private boolean dragEnding; // Whether the mouse has been released, and the last face is still being drawn.
+    private String dragStatus; // Frame rate achieved by the last drag, shown under the polygon (null before any drag).
+
 
     /**
      * Constructor: Create reference face polygon and add a mouse listener to get clicked points for interpolation.
@@ -42,31 +54,47 @@ class MainUIPanel extends JPanel {
      */
     public MainUIPanel(File dataDir, int numReferenceFaces, int width, int height) {
 
-        this.face3DReader = new Face3DReader(dataDir); // Reader for 3D faces.
+        this.face3DReader = new Face3DReader(dataDir, numReferenceFaces, P2main.useDataCache, P2main.lowMemory); // Reader for 3D faces.
+        this.face3DReader.setSparseCoverage(P2main.sparseCoverage); // Fraction of the weight to blend.
+        this.interpolationScheduler = new InterpolationScheduler(face3DReader);
         this.currentRenderedFace = null;
         this.numReferenceFaces = numReferenceFaces; // Number of reference faces.
         referenceFacesPolygonPoints = calculateReferenceFacePolygonPoints(width, height); // Vertices of reference face polygon.
 
+        // Optionally answer points from the faces at the nearest grid nodes, rather than blending every face.
+        this.faceGridCache = (P2main.gridSpacing > 0)
+                ? new FaceGridCache(face3DReader, point -> calculateInterpolationWeights(point, referenceFacesPolygonPoints),
+                referenceFacesPolygonPoints, P2main.gridSpacing)
+                : null;
+
         this.setLayout(new FlowLayout(FlowLayout.CENTER));
         this.setBackground(Color.white);
-        this.addMouseListener(new PointHandler(this)); // Add mouse listener for clicks.
+        PointHandler pointHandler = new PointHandler(this);
+        this.addMouseListener(pointHandler); // Add mouse listener for clicks.
+        this.addMouseMotionListener(pointHandler); // Add mouse listener for drags.
+
+        // Drag events arrive far faster than faces can be drawn, so only the latest point is taken each display frame.
+        this.refreshRate = getDisplayRefreshRate();
+        this.dragTimer = new javax.swing.Timer(Math.max(1, (int) Math.round(1000.0 / refreshRate)), this::dragFrameAction);
 
         // Add UI labels to advise user of how to use the GUI.
         String mainLabel = "<html>A " + numReferenceFaces + "-sided regular polygon has been drawn.\n" +
                 " The vertices of the polygon represent reference 3D face models.\n</html>";
         this.add(new JLabel(mainLabel));
-        String noteLabel = "<html>NOTE: Interpolation of n reference faces has noticeable delay for larger n (~20s for 199 reference faces).\n</html>";
-        this.add(new JLabel(noteLabel));
-        String note2Label = "<html>NOTE: Interpolation (Gouraud) shading has significant delay (order of minutes).\n</html>";
-        this.add(new JLabel(note2Label));
+        if (P2main.renderingType == 1 && P2main.usePaintersAlgorithm) {
+            String noteLabel = "<html>NOTE: Interpolation (Gouraud) shading with painter's algorithm has noticeable delay (use the z-buffer for interactive rates).\n</html>";
+            this.add(new JLabel(noteLabel));
+        }
         String pointCLickControlLabel = "<html><font color='blue'>Click</font> within the polygon to interpolate a face from the reference faces.\n</html>";
         this.add(new JLabel(pointCLickControlLabel));
         String pointCLickControlLabel2 = "<html><font color='blue'>Clicking</font> a vertex of the polygon will draw the corresponding reference face.\n</html>";
         this.add(new JLabel(pointCLickControlLabel2));
+        String pointDragControlLabel = "<html><font color='blue'>Drag</font> within the polygon to morph the face continuously.\n</html>";
+        this.add(new JLabel(pointDragControlLabel));
 
         // Add rotation buttons:
 
-        String rotationControlLabel = "<html><font color='blue'>Click</font> to rotate the 3D rendered face about the Y-axis.\n</html>";
+        String rotationControlLabel = "<html><font color='blue'>Click</font> to rotate the 3D rendered face about the Y-axis, or <font color='blue'>drag</font> the face to rotate it freely.\n</html>";
         this.add(new JLabel(rotationControlLabel));
 
         // User clicks button to rotate 3D face clockwise around Y-axis.
@@ -120,6 +148,12 @@ class MainUIPanel extends JPanel {
         // Draw clicked point if valid.
         drawClickedPoint(graphics2D);
 
+        // Report how smoothly the face followed the last drag.
+        if (dragStatus != null) {
+            graphics2D.setColor(Color.DARK_GRAY);
+            graphics2D.drawString(dragStatus, 10, getHeight() - 10);
+        }
+
     } // paintComponent().
 
     /**
@@ -210,8 +244,8 @@ class MainUIPanel extends JPanel {
      */
     private void autoRotateAction(ActionEvent event) {
 
-        // Interpolation shading to slow for auto-rotation.
-        if (P2main.renderingType == 1) { // Interpolation Shading.
+        // Interpolation shading through Java2D paint contexts is too slow for auto-rotation (the z-buffer is not).
+        if (P2main.renderingType == 1 && P2main.usePaintersAlgorithm) { // Interpolation Shading.
             String warnMsg = "Interpolation (Gouraud) shading is too slow for automatic rotation.";
             JOptionPane.showMessageDialog(null, warnMsg, "Info: ", JOptionPane.INFORMATION_MESSAGE);
             return;
@@ -244,6 +278,109 @@ class MainUIPanel extends JPanel {
      * @param clickedPoint User clicked point.
      */
     public void setClickedPoint(Point clickedPoint) {
+        drawFaceAt(clickedPoint, false);
+    } // setClickedPoint().
+
+    /**
+     * Morph the face towards a dragged point. Only the latest point is kept; it is drawn on the next display frame
+     * at which the renderer has finished the previous face, so the mouse is never held up by interpolation.
+     *
+     * @param draggedPoint User dragged point.
+     */
+    public void setDraggedPoint(Point draggedPoint) {
+
+        pendingDragPoint = draggedPoint;
+
+        if (!dragTimer.isRunning() || dragEnding) { // A new drag.
+            dragStartNanos = System.nanoTime();
+            dragStartFaces = faceUIPanel.getFacesPresented();
+            dragEnding = false;
+            dragTimer.start();
+        }
+
+    } // setDraggedPoint().
+
+    /**
+     * End a drag, drawing the last dragged point if it has not been drawn yet. The drag is reported once that face
+     * has been drawn.
+     */
+    public void endDrag() {
+
+        if (!dragTimer.isRunning() || dragEnding) return; // Mouse was clicked, not dragged.
+
+        // The final point is always drawn, even if it has to wait for the renderer.
+        if (pendingDragPoint != null) {
+            Point point = pendingDragPoint;
+            pendingDragPoint = null;
+            drawFaceAt(point, false);
+        }
+
+        dragEnding = true; // The timer keeps running until the renderer is done.
+
+    } // endDrag().
+
+    /**
+     * Once per display frame while dragging: draw the latest dragged point, unless the renderer is still busy with
+     * the previous face, in which case the point waits (to be replaced by any later one). After the mouse is
+     * released, wait for the last face to be drawn and then report the drag.
+     *
+     * @param event Event triggering the action.
+     */
+    private void dragFrameAction(ActionEvent event) {
+
+        if (dragEnding) {
+
+            if (faceUIPanel.isRendering()) return; // Last face not drawn yet.
+
+            dragTimer.stop();
+            dragEnding = false;
+            updateDragStatus(Math.max(dragStartNanos, faceUIPanel.getLastFacePresentedNanos()));
+            if (P2main.printStats) System.out.println(dragStatus);
+            return;
+
+        }
+
+        if (pendingDragPoint != null && !faceUIPanel.isRendering()) {
+            Point point = pendingDragPoint;
+            pendingDragPoint = null;
+            drawFaceAt(point, true);
+        }
+
+        updateDragStatus(System.nanoTime());
+
+    } // dragFrameAction().
+
+    /**
+     * Describe the frame rate achieved by the current drag, from the faces the renderer has actually drawn since the
+     * drag began and the wall time taken. Display frames that passed without a new face count as dropped.
+     *
+     * @param endNanos System.nanoTime() up to which to measure.
+     */
+    private void updateDragStatus(long endNanos) {
+
+        int faces = faceUIPanel.getFacesPresented() - dragStartFaces;
+        double seconds = (endNanos - dragStartNanos) / 1e9;
+        double framesPerSecond = (seconds > 0) ? faces / seconds : 0;
+        int displayFrames = (int) Math.round(seconds * refreshRate);
+        int droppedFrames = Math.max(0, displayFrames - faces);
+
+        String status = String.format("Morphing: %d faces in %.1f s at %.0f fps (%d of %d display frames dropped).",
+                faces, seconds, framesPerSecond, droppedFrames, displayFrames);
+        if (!status.equals(dragStatus)) {
+            dragStatus = status;
+            repaint(); // Show the new figures.
+        }
+
+    } // updateDragStatus().
+
+    /**
+     * Select a point in the window and draw the face there: the reference face if the point is a polygon vertex, or
+     * the face interpolated from the reference faces if it is inside the polygon.
+     *
+     * @param clickedPoint User clicked or dragged point.
+     * @param isDragFrame  Whether the point is one of a stream of dragged points (so not worth reporting on).
+     */
+    private void drawFaceAt(Point clickedPoint, boolean isDragFrame) {
 
         // If clickedPoint is reference point, then do not interpolate, draw reference point.
         Point2D clickedPointIsReference = isClickedPointAReference(clickedPoint, referenceFacesPolygonPoints);
@@ -253,9 +390,20 @@ class MainUIPanel extends JPanel {
             this.clickedPointIsReference = true;
             this.repaint(); // Update UI.
 
+            // Read and draw the reference face on the render worker, so the UI stays responsive.
+            interpolationScheduler.cancel(); // No interpolated face is wanted any more.
             int referenceFaceIndex = referenceFacesPolygonPoints.indexOf(clickedPointIsReference);
-            currentRenderedFace = face3DReader.getReferenceFace(referenceFaceIndex + 1); // Get references face.
-            faceUIPanel.render3DFace(currentRenderedFace); // Draw the reference face.
+            faceUIPanel.render3DFace(() -> {
+                currentRenderedFace = face3DReader.getReferenceFace(referenceFaceIndex + 1); // Get references face.
+                if (P2main.printStats) {
+                    ReferenceFaceCache cache = face3DReader.getReferenceFaceCache();
+                    System.out.printf("Reference face cache: %d hits, %d misses, %d evictions (%.1f of %.1f MB).%n",
+                            cache.getHits(), cache.getMisses(), cache.getEvictions(),
+                            cache.getCurrentBytes() / (1024.0 * 1024.0), cache.getMaxBytes() / (1024.0 * 1024.0));
+                    MemoryStats.print("Reference face " + (referenceFaceIndex + 1));
+                }
+                return currentRenderedFace; // Draw the reference face.
+            });
 
         } else {
 
@@ -274,17 +422,72 @@ class MainUIPanel extends JPanel {
 
             if (valid) {
 
-                // Get interpolation weights to use based on the clicked point in the canvas.
-                ArrayList<Double> interpolationWeights = calculateInterpolationWeights(clickedPoint, referenceFacesPolygonPoints);
-                // Get interpolated face using weights.
-                currentRenderedFace = face3DReader.getInterpolatedFace(interpolationWeights);
-                faceUIPanel.render3DFace(currentRenderedFace); // Draw the interpolated face.
+                // Interpolate and draw on the render worker, so the UI stays responsive. Clicking again before the
+                // face is drawn cancels this interpolation, so only the latest point is ever drawn.
+                Supplier<Face3D> interpolation;
+                if (faceGridCache != null) {
+                    interpolation = interpolationScheduler.submit(faceGridCache, clickedPoint); // Blend grid faces.
+                } else {
+                    // Get interpolation weights to use based on the clicked point in the canvas.
+                    ArrayList<Double> interpolationWeights = calculateInterpolationWeights(clickedPoint, referenceFacesPolygonPoints);
+                    interpolation = interpolationScheduler.submit(interpolationWeights);
+                }
+                faceUIPanel.render3DFace(() -> {
+
+                    // Get interpolated face using weights.
+                    Face3D interpolatedFace = interpolation.get();
+                    if (interpolatedFace == null) return null; // Superseded by a later click.
+                    currentRenderedFace = interpolatedFace;
+
+                    if (isDragFrame) return currentRenderedFace; // Draw without reporting every frame of a drag.
+
+                    // Report how far a grid blend can be from the exact one.
+                    if (faceGridCache != null) {
+                        System.out.printf("Grid blend (%d/%d node faces built, %.1f MB): max vertex deviation %.4g (shape), %.4g (colour).%n",
+                                faceGridCache.getNodesBuilt(), faceGridCache.getNumNodes(),
+                                faceGridCache.getNodeBytes() / (1024.0 * 1024.0),
+                                faceGridCache.getLastShapeErrorBound(), faceGridCache.getLastColorErrorBound());
+                    }
+
+                    // Report how far a sparse blend can be from the exact one.
+                    SparseWeights sparseWeights = face3DReader.getLastSparseWeights();
+                    if (sparseWeights != null && faceGridCache == null) {
+                        System.out.printf("Sparse blend of %d/%d faces: max vertex deviation %.4g (shape), %.4g (colour).%n",
+                                sparseWeights.getNumKept(), numReferenceFaces,
+                                sparseWeights.getShapeErrorBound(), sparseWeights.getColorErrorBound());
+                    }
+                    if (P2main.printStats) {
+                        System.out.printf("Interpolation took %.1f ms (of %d requests: %d completed, %d cancelled, %d dropped).%n",
+                                interpolationScheduler.getLastCompletedMillis(), interpolationScheduler.getSubmitted(),
+                                interpolationScheduler.getCompleted(), interpolationScheduler.getCancelled(),
+                                interpolationScheduler.getDropped());
+                        FaceInterpolator interpolator = face3DReader.getInterpolator();
+                        System.out.printf("Interpolator: %d full blends, %d incremental blends, %d face offsets applied.%n",
+                                interpolator.getFullBlends(), interpolator.getIncrementalBlends(),
+                                interpolator.getFacesApplied());
+                        MemoryStats.print("Interpolated face");
+                    }
+
+                    return currentRenderedFace; // Draw the interpolated face.
+
+                });
 
             }
 
         }
 
-    } // setClickedPoint().
+    } // drawFaceAt().
+
+    /**
+     * @return Refresh rate of the default display, or DEFAULT_REFRESH_RATE if it is not known.
+     */
+    private static int getDisplayRefreshRate() {
+
+        int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDisplayMode().getRefreshRate();
+        return (rate == DisplayMode.REFRESH_RATE_UNKNOWN) ? DEFAULT_REFRESH_RATE : rate;
+
+    } // getDisplayRefreshRate().
 
     /**
      * Check if the clicked point is one of the reference points.
@@ -352,7 +555,7 @@ class MainUIPanel extends JPanel {
      * @param referenceFacesPolygon Reference face polygon to get interpolation weights of w.r.t. the clicked point.
      * @return List of weights, where index i is the weight for the ith vertex (i.e., reference face).
      */
-    private ArrayList<Double> calculateInterpolationWeights(Point clickedPoint, ArrayList<Point2D> referenceFacesPolygon) {
+    private ArrayList<Double> calculateInterpolationWeights(Point2D clickedPoint, ArrayList<Point2D> referenceFacesPolygon) {
 
         ArrayList<Double> weights = new ArrayList<>();
 
@@ -361,8 +564,16 @@ class MainUIPanel extends JPanel {
 
             double distance = Point2D.distance(currReferenceFaceVertex.getX(), currReferenceFaceVertex.getY(),
                     clickedPoint.getX(), clickedPoint.getY());
-            double weight = 1 / distance;
 
+            // A point on a vertex (e.g. a grid node) is just that reference face.
+            if (distance == 0) {
+                ArrayList<Double> referenceWeights = new ArrayList<>();
+                for (Point2D ignored : referenceFacesPolygon) referenceWeights.add(0.0);
+                referenceWeights.set(referenceFacesPolygon.indexOf(currReferenceFaceVertex), 1.0);
+                return referenceWeights;
+            }
+
+            double weight = 1 / distance;
             weights.add(referenceFacesPolygon.indexOf(currReferenceFaceVertex), weight);
 
         }
@@ -0,0 +1,66 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Heap and garbage collection figures for the running session, printed when the program is run with '-stats'.
+ *
+ * @author 170004680
+ */
+public class MemoryStats {
+
+
+    private static final long MB = 1024 * 1024; // Bytes per megabyte.
+
+
+    // Utility Functions:
+
+    /**
+     * @return Bytes currently in use on the heap (live objects plus garbage not yet collected).
+     */
+    public static long getUsedHeapBytes() {
+
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+
+    } // getUsedHeapBytes().
+
+    /**
+     * @return Number of garbage collections so far, over all collectors.
+     */
+    public static long getGcCount() {
+
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+
+    } // getGcCount().
+
+    /**
+     * @return Total time spent in garbage collection so far, in milliseconds, over all collectors.
+     */
+    public static long getGcTimeMillis() {
+
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return time;
+
+    } // getGcTimeMillis().
+
+    /**
+     * Print the current heap and garbage collection figures.
+     *
+     * @param label What has just happened (e.g. "Interpolated face").
+     */
+    public static void print(String label) {
+
+        System.out.printf("%s: heap used %d MB (max %d MB), %d GCs taking %d ms.%n", label,
+                getUsedHeapBytes() / MB, Runtime.getRuntime().maxMemory() / MB, getGcCount(), getGcTimeMillis());
+
+    } // print().
+
+
+} // MemoryStats{}.
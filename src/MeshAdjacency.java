@@ -0,0 +1,78 @@
+/**
+ * Vertex to triangle adjacency of a mesh, in compressed sparse row form: the triangles using vertex v are
+ * getTriangles()[getOffsets()[v]] up to (not including) getTriangles()[getOffsets()[v + 1]], in increasing order.
+ * <p>
+ * Built once per mesh with a counting pass over the index buffer, in O(V + T), and shared by every face using that
+ * mesh (faces differ only in vertex positions and colours). Per-vertex quantities gathered from adjacent triangles,
+ * such as vertex normals, then take one pass over the index rather than a search of the mesh.
+ *
+ * @author 170004680
+ */
+public class MeshAdjacency {
+
+
+    private final int[] offsets; // Start of the triangles of each vertex within triangles (numVertices + 1 entries).
+    private final int[] triangles; // Triangles adjacent to each vertex, grouped by vertex.
+
+
+    /**
+     * Constructor: Build the adjacency of a mesh.
+     *
+     * @param indices     Three 0-based vertex indices per triangle.
+     * @param numVertices Number of vertices of the mesh.
+     * @throws IllegalArgumentException If an index is not a vertex of the mesh.
+     */
+    public MeshAdjacency(int[] indices, int numVertices) {
+
+        offsets = new int[numVertices + 1];
+        triangles = new int[indices.length - (indices.length % 3)];
+
+        // Count the triangles of each vertex, shifted up one place so that the running sum gives the start offsets.
+        for (int i = 0; i < triangles.length; i++) {
+            if (indices[i] < 0 || indices[i] >= numVertices) {
+                throw new IllegalArgumentException("Triangle " + (i / 3) + " uses vertex " + indices[i]
+                        + ", but the mesh has " + numVertices + " vertices.");
+            }
+            offsets[indices[i] + 1]++;
+        }
+        for (int v = 0; v < numVertices; v++) offsets[v + 1] += offsets[v];
+
+        // Place each triangle after those already placed for the vertex.
+        int[] next = new int[numVertices];
+        System.arraycopy(offsets, 0, next, 0, numVertices);
+        for (int i = 0; i < triangles.length; i++) triangles[next[indices[i]]++] = i / 3;
+
+    } // MeshAdjacency().
+
+    // Getters and Setters:
+
+    /**
+     * @return Start of the triangles of each vertex within getTriangles(), plus the total at the end (not a copy).
+     */
+    public int[] getOffsets() {
+        return offsets;
+    } // getOffsets().
+
+    /**
+     * @return Triangles adjacent to each vertex, grouped by vertex (not a copy).
+     */
+    public int[] getTriangles() {
+        return triangles;
+    } // getTriangles().
+
+    /**
+     * @return Number of vertices.
+     */
+    public int getNumVertices() {
+        return offsets.length - 1;
+    } // getNumVertices().
+
+    /**
+     * @return Number of bytes held by the arrays of this index.
+     */
+    public long getBytes() {
+        return 4L * (offsets.length + triangles.length);
+    } // getBytes().
+
+
+} // MeshAdjacency{}.
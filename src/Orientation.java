@@ -0,0 +1,87 @@
+/**
+ * Orientation of the rendered face relative to the viewer, held as a unit quaternion.
+ * <p>
+ * Rotations are composed into the quaternion instead of being applied to the vertices, so the face itself is never
+ * changed and can be shared. The quaternion is renormalised after every rotation, so rounding cannot build up into
+ * shear or scaling however many rotations are made. Axes are in view space (X right, Y up, Z towards the viewer), so a
+ * rotation always turns the face as it currently appears. Rotations may come from a timer thread as well as the Swing
+ * thread, so access is synchronised.
+ *
+ * @author 170004680
+ */
+public class Orientation {
+
+
+    private double w = 1, x = 0, y = 0, z = 0; // Unit quaternion, w + xi + yj + zk (identity: facing the viewer).
+
+
+    /**
+     * Constructor: Start facing the viewer.
+     */
+    public Orientation() {
+    } // Orientation().
+
+    // Utility Functions:
+
+    /**
+     * Rotate about an axis through the centre of the face.
+     *
+     * @param axisX X component of the axis, in view space (need not be unit length).
+     * @param axisY Y component of the axis.
+     * @param axisZ Z component of the axis.
+     * @param angle Angle to rotate by, in radians (anti-clockwise looking down the axis towards the origin).
+     */
+    public synchronized void rotate(double axisX, double axisY, double axisZ, double angle) {
+
+        double axisLength = Math.sqrt((axisX * axisX) + (axisY * axisY) + (axisZ * axisZ));
+        if (axisLength == 0 || angle == 0) return; // No rotation.
+
+        // Quaternion of the rotation: (cos(angle/2), sin(angle/2) * unit axis).
+        double sin = Math.sin(angle / 2) / axisLength;
+        double rw = Math.cos(angle / 2), rx = axisX * sin, ry = axisY * sin, rz = axisZ * sin;
+
+        // Apply after the current orientation (view-space axis): q = r * q.
+        double nw = (rw * w) - (rx * x) - (ry * y) - (rz * z);
+        double nx = (rw * x) + (rx * w) + (ry * z) - (rz * y);
+        double ny = (rw * y) - (rx * z) + (ry * w) + (rz * x);
+        double nz = (rw * z) + (rx * y) - (ry * x) + (rz * w);
+
+        double length = Math.sqrt((nw * nw) + (nx * nx) + (ny * ny) + (nz * nz));
+        w = nw / length;
+        x = nx / length;
+        y = ny / length;
+        z = nz / length;
+
+    } // rotate().
+
+    /**
+     * Return to facing the viewer.
+     */
+    public synchronized void reset() {
+
+        w = 1;
+        x = y = z = 0;
+
+    } // reset().
+
+    /**
+     * Write the orientation as a rotation matrix, so that it can be applied to many vertices at 9 multiplies each.
+     *
+     * @param matrix Array of at least 9 elements to receive the matrix, in row-major order.
+     */
+    public synchronized void getMatrix(double[] matrix) {
+
+        matrix[0] = 1 - 2 * ((y * y) + (z * z));
+        matrix[1] = 2 * ((x * y) - (w * z));
+        matrix[2] = 2 * ((x * z) + (w * y));
+        matrix[3] = 2 * ((x * y) + (w * z));
+        matrix[4] = 1 - 2 * ((x * x) + (z * z));
+        matrix[5] = 2 * ((y * z) - (w * x));
+        matrix[6] = 2 * ((x * z) - (w * y));
+        matrix[7] = 2 * ((y * z) + (w * x));
+        matrix[8] = 1 - 2 * ((x * x) + (y * y));
+
+    } // getMatrix().
+
+
+} // Orientation{}.
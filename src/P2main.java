@@ -12,10 +12,20 @@ public class P2main {
 
 
     // Message to show is program executed incorrectly.
-    private static final String USAGE_MSG = "java P2main <path_to_data_dir> <num_reference_faces> [-fs|-is|-wf] [-l|nl]";
+    private static final String USAGE_MSG = "java P2main <path_to_data_dir> <num_reference_faces> [-fs|-is|-wf] [-l|nl] [-bc] [-lm] [-sp=<coverage>] [-stats] [-pa] [-rt=<threads>] [-aa=<n>[r|p]|analytic] [-wc] [-gc=<spacing>]";
     // Type of 3D face rendering to use.
     public static int renderingType = 0; // 0 = Flat Shading (default), 1 = Interpolation Shading, -1 = Wire-frame.
     public static boolean isLighting = true; // True means add directional lighting, false means no lighting (evenly lit).
+    public static boolean useDataCache = false; // True means read faces from the memory-mapped binary data cache.
+    public static boolean lowMemory = false; // True means stream reference faces from disk for every interpolation.
+    public static double sparseCoverage = 1; // Fraction of the interpolation weight to blend (1 blends every face).
+    public static boolean printStats = false; // True means print heap and garbage collection figures as faces are drawn.
+    public static boolean usePaintersAlgorithm = false; // True means draw with painter's algorithm instead of a z-buffer.
+    public static int renderThreads = Runtime.getRuntime().availableProcessors(); // Threads rasterizing frame tiles.
+    // Anti-aliasing of interpolation shading with painter's algorithm (default 4 samples on a rotated grid).
+    public static SamplePattern samplePattern = SamplePattern.create(4, SamplePattern.Type.ROTATED_GRID);
+    public static boolean cullWireFrame = false; // True means wire-frame also hides back-facing triangles.
+    public static double gridSpacing = 0; // Pixels between weight-space grid nodes (0 interpolates every point exactly).
 
     /**
      * Entry point to the CS4102 P2 program.
@@ -24,11 +34,21 @@ public class P2main {
      *             args[1] - Number of reference faces (between 3 and 199 inclusive).
      *             args[2] - '-fs' = Flat Shading, '-is' = Interpolation Shading, '-wf' = Wire-frame.
      *             args[3] - '-l' = Directional Lighting (Default), '-nl' = No Lighting (Even face lighting).
+     *             args[4] - '-bc' = Binary Cache (Read faces from a memory-mapped binary copy of the data files).
+     *             args[5] - '-lm' = Low Memory (Stream reference faces from disk rather than holding them in memory).
+     *             args[6] - '-sp=c' = Sparse Blending (Blend only the fewest faces covering fraction c of the weight).
+     *             args[7] - '-stats' = Statistics (Print heap and garbage collection figures as faces are drawn).
+     *             args[8] - '-pa' = Painter's Algorithm (Sort and fill triangles through Java2D, not the z-buffer).
+     *             args[9] - '-rt=n' = Render Threads (Rasterize frame tiles on n threads, default one per core).
+     *             args[10] - '-aa=p' = Anti-Aliasing ('n' or 'nr' = n rotated-grid samples, 'np' = n Poisson samples,
+     *                        for n = 1, 2, 4, 8 or 16, or 'analytic' = edge-distance coverage).
+     *             args[11] - '-wc' = Wire-frame Culling (Hide back-facing triangles in wire-frame, as when filled).
+     *             args[12] - '-gc=s' = Grid Cache (Blend points from faces cached at grid nodes s pixels apart).
      */
     public static void main(String[] args) {
 
         // Check correct number of arguments given.
-        if (args.length < 2 || args.length > 4) {
+        if (args.length < 2 || args.length > 13) {
             System.out.println(USAGE_MSG);
             System.exit(-1); // Error status.
         }
@@ -70,6 +90,98 @@ public class P2main {
             isLighting = false;
         }
 
+        // Determines whether to read faces from the binary data cache (built from the CSV files when stale).
+        if (argsList.contains("-bc")) {
+            useDataCache = true;
+        }
+
+        // Determines whether to stream reference faces on each interpolation (memory proportional to one face).
+        if (argsList.contains("-lm")) {
+            lowMemory = true;
+        }
+
+        // Determines what fraction of the interpolation weight must be covered by the faces actually blended.
+        for (String arg : argsList) {
+            if (arg.startsWith("-sp=")) {
+                try {
+
+                    sparseCoverage = Double.parseDouble(arg.substring(4));
+                    if (!(sparseCoverage > 0 && sparseCoverage <= 1)) {
+                        System.out.println("Error: Sparse Coverage Must Be Greater Than 0 And At Most 1.\n" + USAGE_MSG);
+                        System.exit(-1); // Error status.
+                    }
+
+                } catch (NumberFormatException e) {
+                    System.out.println("Error: Provided Sparse Coverage Is Invalid.\n" + USAGE_MSG);
+                    System.exit(-1); // Error status.
+                }
+            }
+        }
+
+        // Determines whether to report heap footprint and garbage collections during the session.
+        if (argsList.contains("-stats")) {
+            printStats = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> MemoryStats.print("Session")));
+        }
+
+        // Determines whether to render with the original Java2D painter's algorithm rather than the z-buffered rasterizer.
+        if (argsList.contains("-pa")) {
+            usePaintersAlgorithm = true;
+        }
+
+        // Determines how many threads rasterize the tiles of each frame (1 rasterizes on the render worker alone).
+        for (String arg : argsList) {
+            if (arg.startsWith("-rt=")) {
+                try {
+
+                    renderThreads = Integer.parseInt(arg.substring(4));
+                    if (renderThreads < 1) {
+                        System.out.println("Error: Render Threads Must Be At Least 1.\n" + USAGE_MSG);
+                        System.exit(-1); // Error status.
+                    }
+
+                } catch (NumberFormatException e) {
+                    System.out.println("Error: Provided Render Threads Is Invalid.\n" + USAGE_MSG);
+                    System.exit(-1); // Error status.
+                }
+            }
+        }
+
+        // Determines how interpolation shaded triangles are anti-aliased when drawn with painter's algorithm.
+        for (String arg : argsList) {
+            if (arg.startsWith("-aa=")) {
+                try {
+                    samplePattern = SamplePattern.parse(arg.substring(4));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Error: " + e.getMessage() + "\n" + USAGE_MSG);
+                    System.exit(-1); // Error status.
+                }
+            }
+        }
+
+        // Determines whether wire-frame shows only front-facing triangles, rather than the whole mesh for debugging.
+        if (argsList.contains("-wc")) {
+            cullWireFrame = true;
+        }
+
+        // Determines whether points are blended from faces at the nodes of a grid over the polygon, and how fine it is.
+        for (String arg : argsList) {
+            if (arg.startsWith("-gc=")) {
+                try {
+
+                    gridSpacing = Double.parseDouble(arg.substring(4));
+                    if (!(gridSpacing >= 1)) {
+                        System.out.println("Error: Grid Spacing Must Be At Least 1 Pixel.\n" + USAGE_MSG);
+                        System.exit(-1); // Error status.
+                    }
+
+                } catch (NumberFormatException e) {
+                    System.out.println("Error: Provided Grid Spacing Is Invalid.\n" + USAGE_MSG);
+                    System.exit(-1); // Error status.
+                }
+            }
+        }
+
         // Create JFrame for the UI interface.
         JFrame jFrame = new JFrame("CS4102 Computer Graphics P2 - 3D Rendering:");
         jFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE); // On close, exit program.
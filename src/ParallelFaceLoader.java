@@ -0,0 +1,246 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads many data files concurrently: reads are spread over a bounded pool of I/O threads and parsing over a
+ * fork-join pool sized to the available cores.
+ * <p>
+ * Results are delivered with the index of the file they came from, so ordering is deterministic regardless of the
+ * order in which files complete. The first file to fail cancels the rest of the load and is reported by name.
+ *
+ * @author 170004680
+ */
+public class ParallelFaceLoader {
+
+
+    private static final int MAX_IO_THREADS = 8; // Upper bound on files being read from disk at once.
+
+    private final int ioThreads; // Number of threads reading files.
+    private final int parseThreads; // Number of threads parsing file contents.
+    private final ProgressListener progressListener; // Notified as each file completes, may be null.
+
+
+    /**
+     * Constructor: Use the default I/O bound and one parse thread per available core.
+     *
+     * @param progressListener Notified as each file completes, may be null.
+     */
+    public ParallelFaceLoader(ProgressListener progressListener) {
+        this(MAX_IO_THREADS, Runtime.getRuntime().availableProcessors(), progressListener);
+    } // ParallelFaceLoader().
+
+    /**
+     * Constructor:
+     *
+     * @param ioThreads        Number of threads reading files.
+     * @param parseThreads     Number of threads parsing file contents.
+     * @param progressListener Notified as each file completes, may be null.
+     */
+    public ParallelFaceLoader(int ioThreads, int parseThreads, ProgressListener progressListener) {
+
+        this.ioThreads = Math.max(1, ioThreads);
+        this.parseThreads = Math.max(1, parseThreads);
+        this.progressListener = progressListener;
+
+    } // ParallelFaceLoader().
+
+    // Utility Functions:
+
+    /**
+     * Load and parse every file, returning the results in the same order as the files.
+     *
+     * @param files  Files to load.
+     * @param parser Parser applied to the contents of each file.
+     * @param <T>    Type of the parsed result.
+     * @return Parsed results, where index i is the result for files.get(i).
+     * @throws IOException If any file cannot be read or parsed (named in the message).
+     */
+    public <T> List<T> load(List<File> files, FileParser<T> parser) throws IOException {
+
+        Object[] results = new Object[files.size()];
+        load(files, parser, (index, result) -> results[index] = result);
+
+        @SuppressWarnings("unchecked")
+        List<T> resultList = (List<T>) new ArrayList<>(Arrays.asList(results));
+        return resultList;
+
+    } // load().
+
+    /**
+     * Load and parse every file, handing each result to the consumer as soon as it is parsed. The consumer is called
+     * concurrently from the parse threads, each call with a distinct index.
+     *
+     * @param files    Files to load.
+     * @param parser   Parser applied to the contents of each file.
+     * @param consumer Receives each result along with the index of its file.
+     * @param <T>      Type of the parsed result.
+     * @throws IOException If any file cannot be read or parsed (named in the message).
+     */
+    public <T> void load(List<File> files, FileParser<T> parser, ResultConsumer<T> consumer) throws IOException {
+
+        int total = files.size();
+        if (total == 0) return;
+
+        ExecutorService ioPool = Executors.newFixedThreadPool(Math.min(ioThreads, total), runnable -> {
+            Thread thread = new Thread(runnable, "face-loader-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ForkJoinPool parsePool = new ForkJoinPool(parseThreads);
+
+        AtomicInteger completed = new AtomicInteger();
+        CompletableFuture<Void> firstFailure = new CompletableFuture<>(); // Completes exceptionally on first error.
+        List<CompletableFuture<Void>> futures = new ArrayList<>(total);
+
+        try {
+
+            for (int i = 0; i < total; i++) {
+
+                int index = i;
+                File file = files.get(i);
+
+                CompletableFuture<Void> future = CompletableFuture
+                        .supplyAsync(() -> readFile(file), ioPool)
+                        .thenApplyAsync(contents -> parseFile(parser, file, contents), parsePool)
+                        .thenAccept(result -> {
+                            consumer.accept(index, result);
+                            if (progressListener != null) progressListener.progress(completed.incrementAndGet(), total);
+                        });
+
+                future.whenComplete((ignored, error) -> {
+                    if (error != null) firstFailure.completeExceptionally(error);
+                });
+                futures.add(future);
+
+            }
+
+            // Wait for everything to finish, or for the first failure - whichever comes first.
+            CompletableFuture.anyOf(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])), firstFailure)
+                    .join();
+
+        } catch (CompletionException | CancellationException e) {
+
+            for (CompletableFuture<Void> future : futures) future.cancel(true);
+            throw toIOException(e);
+
+        } finally {
+
+            ioPool.shutdownNow();
+            parsePool.shutdownNow();
+
+        }
+
+    } // load().
+
+    /**
+     * @param file File to read.
+     * @return Entire contents of the file.
+     */
+    private static ByteBuffer readFile(File file) {
+
+        try {
+            return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + file + " (" + e + ")", e);
+        }
+
+    } // readFile().
+
+    /**
+     * @param parser   Parser to apply.
+     * @param file     File the contents came from.
+     * @param contents Contents of the file.
+     * @param <T>      Type of the parsed result.
+     * @return Parsed result.
+     */
+    private static <T> T parseFile(FileParser<T> parser, File file, ByteBuffer contents) {
+
+        try {
+            return parser.parse(file, contents);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e.getMessage(), e); // Parsers name the file themselves.
+        } catch (RuntimeException e) {
+            throw new UncheckedIOException("Failed to parse " + file + ": " + e, new IOException(e));
+        }
+
+    } // parseFile().
+
+    /**
+     * @param e Exception raised while waiting for the load.
+     * @return IOException describing the file that failed.
+     */
+    private static IOException toIOException(RuntimeException e) {
+
+        Throwable cause = e;
+        while ((cause instanceof CompletionException) && cause.getCause() != null) cause = cause.getCause();
+
+        if (cause instanceof UncheckedIOException) {
+            IOException ioException = ((UncheckedIOException) cause).getCause();
+            return new IOException(cause.getMessage() != null ? cause.getMessage() : ioException.getMessage(), ioException);
+        }
+
+        return new IOException("Loading interrupted: " + cause, cause);
+
+    } // toIOException().
+
+
+    /**
+     * Parses the contents of one file.
+     *
+     * @param <T> Type of the parsed result.
+     */
+    public interface FileParser<T> {
+
+        /**
+         * @param file     File the contents came from (for error messages).
+         * @param contents Entire contents of the file.
+         * @return Parsed result.
+         * @throws IOException If the contents are malformed.
+         */
+        T parse(File file, ByteBuffer contents) throws IOException;
+
+    } // FileParser{}.
+
+    /**
+     * Receives parsed results along with the index of the file they came from.
+     *
+     * @param <T> Type of the parsed result.
+     */
+    public interface ResultConsumer<T> {
+
+        /**
+         * @param index  Index of the file within the list being loaded.
+         * @param result Parsed result.
+         */
+        void accept(int index, T result);
+
+    } // ResultConsumer{}.
+
+    /**
+     * Notified each time a file finishes loading.
+     */
+    public interface ProgressListener {
+
+        /**
+         * @param completed Number of files loaded so far.
+         * @param total     Total number of files being loaded.
+         */
+        void progress(int completed, int total);
+
+    } // ProgressListener{}.
+
+
+} // ParallelFaceLoader{}.
@@ -3,7 +3,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 
 /**
- * PointHandler: Handles the addition of points on the 2D canvas.
+ * PointHandler: Handles the addition of points on the 2D canvas, by clicking or by dragging.
  *
  * @author 170004680
  */
@@ -37,5 +37,29 @@ class PointHandler extends MouseAdapter {
 
     } // mousePressed().
 
+    /**
+     * Mouse Drag Handler: Morph the face towards the dragged point (events are coalesced to the frame rate).
+     *
+     * @param mouseEvent The mouse event that triggered this action.
+     */
+    @Override
+    public void mouseDragged(MouseEvent mouseEvent) {
+
+        mainUiPanel.setDraggedPoint(mouseEvent.getPoint());
+
+    } // mouseDragged().
+
+    /**
+     * Mouse Release Handler: End of a drag.
+     *
+     * @param mouseEvent The mouse event that triggered this action.
+     */
+    @Override
+    public void mouseReleased(MouseEvent mouseEvent) {
+
+        mainUiPanel.endDrag();
+
+    } // mouseReleased().
+
 
 } // PointHandler{}.
@@ -0,0 +1,85 @@
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-thread pool of packed ARGB rasters, keyed by size. Java2D asks a paint context for one raster per tile it
+ * fills, for every triangle drawn, and those tiles are nearly always the same few sizes; pooling them means a frame
+ * reuses a handful of rasters instead of allocating a new array, data buffer and raster for every tile.
+ * <p>
+ * Each thread has its own pool, so acquiring and releasing needs no locking. A raster must be released on the thread
+ * that acquired it.
+ *
+ * @author 170004680
+ */
+public class RasterPool {
+
+
+    private static final int MAX_PER_SIZE = 4; // Rasters of one size kept for reuse (extra releases are dropped).
+
+    private static final ThreadLocal<RasterPool> POOLS = ThreadLocal.withInitial(RasterPool::new);
+
+    private final Map<Long, ArrayDeque<WritableRaster>> free = new HashMap<>(); // Free rasters, by size.
+
+
+    /**
+     * Constructor: Use forThread() to get the pool of the current thread.
+     */
+    private RasterPool() {
+    } // RasterPool().
+
+    // Utility Functions:
+
+    /**
+     * @return Pool belonging to the calling thread.
+     */
+    public static RasterPool forThread() {
+        return POOLS.get();
+    } // forThread().
+
+    /**
+     * Take a raster of the given size from the pool, creating one if there is none free. Its contents are undefined.
+     *
+     * @param w           Raster width.
+     * @param h           Raster height.
+     * @param colorModel  Colour model whose masks the raster packs its pixels with.
+     * @return WritableRaster object.
+     */
+    public WritableRaster acquire(int w, int h, DirectColorModel colorModel) {
+
+        ArrayDeque<WritableRaster> rasters = free.get(key(w, h));
+        if (rasters != null && !rasters.isEmpty()) return rasters.pop();
+
+        DataBufferInt buffer = new DataBufferInt(new int[w * h], w * h);
+        return Raster.createPackedRaster(buffer, w, h, w, colorModel.getMasks(), null);
+
+    } // acquire().
+
+    /**
+     * Return a raster to the pool, for a later acquire() of the same size.
+     *
+     * @param raster Raster previously acquired on this thread, no longer in use.
+     */
+    public void release(WritableRaster raster) {
+
+        ArrayDeque<WritableRaster> rasters = free.computeIfAbsent(key(raster.getWidth(), raster.getHeight()),
+                size -> new ArrayDeque<>(MAX_PER_SIZE));
+        if (rasters.size() < MAX_PER_SIZE) rasters.push(raster);
+
+    } // release().
+
+    /**
+     * @param w Raster width.
+     * @param h Raster height.
+     * @return Key identifying rasters of this size.
+     */
+    private static long key(int w, int h) {
+        return ((long) w << 32) | (h & 0xffffffffL);
+    } // key().
+
+
+} // RasterPool{}.
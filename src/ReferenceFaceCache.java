@@ -0,0 +1,148 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory-bounded least-recently-used cache of reconstructed reference faces, keyed by face number.
+ * <p>
+ * The limit is on the estimated heap size of the cached faces rather than on the number of entries. All methods are
+ * synchronized, so the cache can be shared between a background loader thread and the EDT.
+ *
+ * @author 170004680
+ */
+public class ReferenceFaceCache {
+
+
+    private final long maxBytes; // Maximum estimated size of all cached faces.
+    private final LinkedHashMap<Integer, Face3D> faces; // Cached faces, in access order (least recent first).
+    private final HashMap<Integer, Long> faceBytes = new HashMap<>(); // Size of each cached face when it was added.
+    private long currentBytes; // Estimated size of all cached faces.
+
+    private long hits; // Number of lookups answered from the cache.
+    private long misses; // Number of lookups not in the cache.
+    private long evictions; // Number of faces evicted to stay within the size limit.
+
+
+    /**
+     * Constructor:
+     *
+     * @param maxBytes Maximum estimated size in bytes of all cached faces.
+     */
+    public ReferenceFaceCache(long maxBytes) {
+
+        this.maxBytes = maxBytes;
+        this.faces = new LinkedHashMap<>(16, 0.75f, true); // Access order, for LRU eviction.
+
+    } // ReferenceFaceCache().
+
+    // Utility Functions:
+
+    /**
+     * @param faceNum Number of the reference face.
+     * @return Cached face (marked as most recently used), or null if not cached.
+     */
+    public synchronized Face3D get(int faceNum) {
+
+        Face3D face = faces.get(faceNum);
+
+        if (face != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+
+        return face;
+
+    } // get().
+
+    /**
+     * Add a face to the cache, evicting least recently used faces until the cache is within its size limit. Faces
+     * larger than the whole limit are not cached.
+     *
+     * @param faceNum Number of the reference face.
+     * @param face    Face to cache.
+     */
+    public synchronized void put(int faceNum, Face3D face) {
+
+        long bytes = face.getEstimatedBytes();
+        if (bytes > maxBytes) return;
+
+        // Subtract exactly what was added for a face, however its estimate has changed since.
+        faces.put(faceNum, face);
+        Long previousBytes = faceBytes.put(faceNum, bytes);
+        if (previousBytes != null) currentBytes -= previousBytes;
+        currentBytes += bytes;
+
+        // Evict from the least recently used end.
+        Iterator<Map.Entry<Integer, Face3D>> iterator = faces.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+
+            Map.Entry<Integer, Face3D> eldest = iterator.next();
+            if (eldest.getKey() == faceNum) continue; // Never evict the face just added.
+
+            currentBytes -= faceBytes.remove(eldest.getKey());
+            iterator.remove();
+            evictions++;
+
+        }
+
+    } // put().
+
+    /**
+     * Remove every face from the cache (counters are kept).
+     */
+    public synchronized void clear() {
+
+        faces.clear();
+        faceBytes.clear();
+        currentBytes = 0;
+
+    } // clear().
+
+    // Getters and Setters:
+
+    /**
+     * @return hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    } // getHits().
+
+    /**
+     * @return misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    } // getMisses().
+
+    /**
+     * @return evictions.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    } // getEvictions().
+
+    /**
+     * @return Estimated size in bytes of all cached faces.
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    } // getCurrentBytes().
+
+    /**
+     * @return maxBytes.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    } // getMaxBytes().
+
+    /**
+     * @return Number of cached faces.
+     */
+    public synchronized int size() {
+        return faces.size();
+    } // size().
+
+
+} // ReferenceFaceCache{}.
@@ -0,0 +1,215 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+
+/**
+ * Renders the frames of a component on a dedicated worker thread, so that slow work (interpolating a face, shading it)
+ * never blocks the Swing event dispatch thread.
+ * <p>
+ * Frames are drawn into an off-screen back buffer. When a frame is finished the back and front buffers are swapped
+ * under a lock and a repaint is scheduled, so painting on the EDT only ever copies the last finished frame. Jobs (e.g.
+ * computing the next face) run on the worker in the order submitted, each followed by a frame. Frame requests are
+ * coalesced: however many arrive while a frame is being drawn, one more frame is drawn afterwards. If work is still in
+ * flight after a short delay the component is repainted so it can show that it is busy.
+ *
+ * @author 170004680
+ */
+public class RenderService {
+
+
+    /**
+     * Draws one frame.
+     */
+    public interface FrameRenderer {
+
+        /**
+         * Draw a complete frame (the buffer is not cleared beforehand).
+         *
+         * @param graphics2D Graphics of the back buffer.
+         * @param width      Width of the frame.
+         * @param height     Height of the frame.
+         */
+        void renderFrame(Graphics2D graphics2D, int width, int height);
+
+    } // FrameRenderer{}.
+
+    private static final int BUSY_INDICATOR_DELAY = 200; // Milliseconds of work before showing that work is in flight.
+
+    private final JComponent component; // Component the frames are for.
+    private final FrameRenderer renderer; // Draws each frame.
+    private final Thread worker; // Runs jobs and draws frames.
+    private final Timer busyTimer; // Repaints the component once work has been in flight for a while.
+
+    private final Object lock = new Object(); // Guards the fields below.
+    private final ArrayDeque<Runnable> jobs = new ArrayDeque<>(); // Jobs waiting to run, oldest first.
+    private boolean frameRequested; // Whether a frame is to be drawn.
+    private boolean busy; // Whether a job or frame is waiting or running.
+    private BufferedImage frontBuffer, backBuffer; // Last finished frame, and the frame being drawn.
+
+
+    /**
+     * Constructor: Start the worker thread (a daemon, so it does not keep the program running).
+     *
+     * @param name      Name of the worker thread.
+     * @param component Component the frames are for (repainted as frames finish).
+     * @param renderer  Draws each frame, on the worker thread.
+     */
+    public RenderService(String name, JComponent component, FrameRenderer renderer) {
+
+        this.component = component;
+        this.renderer = renderer;
+
+        this.busyTimer = new Timer(BUSY_INDICATOR_DELAY, event -> component.repaint());
+        this.busyTimer.setRepeats(false);
+
+        this.worker = new Thread(this::runWorker, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+
+    } // RenderService().
+
+    // Utility Functions:
+
+    /**
+     * Run a job on the worker thread, after any jobs already submitted, then draw a frame.
+     *
+     * @param job Job to run (e.g. computing the face to draw).
+     */
+    public void submit(Runnable job) {
+
+        synchronized (lock) {
+            jobs.add(job);
+            frameRequested = true;
+            startWork();
+        }
+
+    } // submit().
+
+    /**
+     * Draw a frame on the worker thread (merged with any frame not yet started).
+     */
+    public void requestFrame() {
+
+        synchronized (lock) {
+            frameRequested = true;
+            startWork();
+        }
+
+    } // requestFrame().
+
+    /**
+     * Copy the last finished frame to the component (on the EDT, from paintComponent()).
+     *
+     * @param graphics Graphics of the component.
+     */
+    public void drawFrame(Graphics graphics) {
+
+        synchronized (lock) {
+            if (frontBuffer != null) graphics.drawImage(frontBuffer, 0, 0, null);
+        }
+
+    } // drawFrame().
+
+    /**
+     * Mark work as in flight and wake the worker. Must hold the lock.
+     */
+    private void startWork() {
+
+        if (!busy) {
+            busy = true;
+            busyTimer.restart();
+        }
+        lock.notifyAll();
+
+    } // startWork().
+
+    /**
+     * Worker loop: wait for jobs or frame requests, then run the jobs and draw a frame into the back buffer.
+     */
+    private void runWorker() {
+
+        while (true) {
+
+            Runnable job = null;
+            synchronized (lock) {
+
+                while (jobs.isEmpty() && !frameRequested) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return; // Shutting down.
+                    }
+                }
+
+                if (!jobs.isEmpty()) {
+                    job = jobs.poll();
+                } else {
+                    frameRequested = false;
+                }
+
+            }
+
+            try {
+                if (job != null) {
+                    job.run();
+                } else {
+                    renderFrame();
+                }
+            } catch (RuntimeException e) {
+                System.out.println("RenderService Exception: " + e); // Keep the worker alive for later work.
+            }
+
+            synchronized (lock) {
+                if (jobs.isEmpty() && !frameRequested) {
+                    busy = false;
+                    busyTimer.stop();
+                }
+            }
+            if (job == null) component.repaint(); // Show the new frame (and whether work is still in flight).
+
+        }
+
+    } // runWorker().
+
+    /**
+     * Draw a frame into the back buffer, then make it the front buffer.
+     */
+    private void renderFrame() {
+
+        // Size can change at any time, so take it once for the whole frame.
+        int width = Math.max(1, component.getWidth()), height = Math.max(1, component.getHeight());
+        if (backBuffer == null || backBuffer.getWidth() != width || backBuffer.getHeight() != height) {
+            backBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+
+        Graphics2D graphics2D = backBuffer.createGraphics();
+        try {
+            renderer.renderFrame(graphics2D, width, height);
+        } finally {
+            graphics2D.dispose();
+        }
+
+        synchronized (lock) {
+            BufferedImage finished = backBuffer;
+            backBuffer = frontBuffer;
+            frontBuffer = finished;
+        }
+
+    } // renderFrame().
+
+    // Getters and Setters:
+
+    /**
+     * @return Whether a job or frame is waiting or running.
+     */
+    public boolean isBusy() {
+
+        synchronized (lock) {
+            return busy;
+        }
+
+    } // isBusy().
+
+
+} // RenderService{}.
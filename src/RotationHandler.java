@@ -0,0 +1,61 @@
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+/**
+ * RotationHandler: Handles dragging the rendered face to rotate it freely.
+ *
+ * @author 170004680
+ */
+class RotationHandler extends MouseAdapter {
+
+
+    private static final double RADIANS_PER_PIXEL = Math.PI / 360; // Dragging 360 pixels turns the face 180 degrees.
+
+    FaceUIPanel faceUIPanel; // UIPanel instance this listener tied to.
+    private Point lastPoint; // Where the mouse was at the last press or drag event.
+
+
+    /**
+     * Constructor:
+     *
+     * @param faceUIPanel UIPanel instance this object is a listener for.
+     */
+    public RotationHandler(FaceUIPanel faceUIPanel) {
+
+        this.faceUIPanel = faceUIPanel;
+
+    } // RotationHandler().
+
+    /**
+     * Mouse Press Handler: Start of a drag.
+     *
+     * @param mouseEvent The mouse event that triggered this action.
+     */
+    @Override
+    public void mousePressed(MouseEvent mouseEvent) {
+
+        lastPoint = mouseEvent.getPoint();
+
+    } // mousePressed().
+
+    /**
+     * Mouse Drag Handler: Rotate the face about the axis perpendicular to the drag, so it turns the way it is dragged.
+     *
+     * @param mouseEvent The mouse event that triggered this action.
+     */
+    @Override
+    public void mouseDragged(MouseEvent mouseEvent) {
+
+        Point point = mouseEvent.getPoint();
+        if (lastPoint == null) lastPoint = point;
+
+        int dx = point.x - lastPoint.x, dy = point.y - lastPoint.y; // Window Y is down, view-space Y is up.
+        lastPoint = point;
+
+        faceUIPanel.dragRotationAction(dy, dx, 0, Math.hypot(dx, dy) * RADIANS_PER_PIXEL);
+
+    } // mouseDragged().
+
+
+} // RotationHandler{}.
@@ -0,0 +1,177 @@
+import java.util.Random;
+
+/**
+ * Positions within a pixel at which coverage is sampled for anti-aliasing, or analytic edge coverage.
+ * <p>
+ * Rotated-grid patterns are the standard 1/2/4/8/16 sample positions used by graphics hardware (no two samples share
+ * a row or column, so near-horizontal and near-vertical edges get as many coverage levels as there are samples).
+ * Poisson patterns are generated once by best-candidate sampling with a fixed seed, so they are the same every run.
+ * Analytic coverage takes no samples: it estimates coverage from the distance of the pixel centre to each edge.
+ *
+ * @author 170004680
+ */
+public class SamplePattern {
+
+
+    /**
+     * How the samples within a pixel are placed.
+     */
+    public enum Type {
+        ROTATED_GRID, POISSON, ANALYTIC
+    } // Type{}.
+
+    // Standard rotated-grid positions, in 1/16ths of a pixel from its centre (x,y per sample), for 1/2/4/8/16 samples.
+    private static final int[][] ROTATED_GRID_POSITIONS = {
+            {0, 0},
+            {4, 4, -4, -4},
+            {-2, -6, 6, -2, -6, 2, 2, 6},
+            {1, -3, -1, 3, 5, 1, -3, -5, -5, 5, -7, -1, 3, 7, 7, -7},
+            {1, 1, -1, -3, -3, 2, 4, -1, -5, -2, 2, 5, 5, 3, 3, -5,
+                    -2, 6, 0, -7, -4, -6, -6, 4, -8, 0, 7, -4, 6, 7, -7, -8}
+    };
+    private static final long POISSON_SEED = 4102; // Seed for Poisson patterns, so they never change between runs.
+    private static final int POISSON_CANDIDATES = 32; // Candidates tried per Poisson sample (more is more even).
+
+    private final Type type; // How the samples are placed.
+    private final float[] offsets; // x,y offset of each sample from the top-left corner of the pixel, in [0, 1).
+
+
+    /**
+     * Constructor:
+     *
+     * @param type    How the samples are placed.
+     * @param offsets x,y offset of each sample from the top-left corner of the pixel.
+     */
+    private SamplePattern(Type type, float[] offsets) {
+
+        this.type = type;
+        this.offsets = offsets;
+
+    } // SamplePattern().
+
+    // Utility Functions:
+
+    /**
+     * Create a sample pattern.
+     *
+     * @param numSamples Number of samples per pixel: 1, 2, 4, 8 or 16 (ignored for analytic coverage).
+     * @param type       How the samples are placed.
+     * @return Sample pattern.
+     * @throws IllegalArgumentException If the number of samples is not supported.
+     */
+    public static SamplePattern create(int numSamples, Type type) {
+
+        if (type == Type.ANALYTIC) return new SamplePattern(type, new float[]{.5f, .5f});
+
+        int level = Integer.numberOfTrailingZeros(numSamples);
+        if (numSamples != (1 << level) || level >= ROTATED_GRID_POSITIONS.length) {
+            throw new IllegalArgumentException("Samples per pixel must be 1, 2, 4, 8 or 16, not " + numSamples + ".");
+        }
+
+        if (type == Type.POISSON && numSamples > 1) return new SamplePattern(type, createPoisson(numSamples));
+
+        int[] positions = ROTATED_GRID_POSITIONS[level];
+        float[] offsets = new float[positions.length];
+        for (int k = 0; k < positions.length; k++) offsets[k] = .5f + positions[k] / 16f;
+
+        return new SamplePattern(Type.ROTATED_GRID, offsets);
+
+    } // create().
+
+    /**
+     * Place samples by best-candidate sampling: each new sample is the candidate furthest from all samples so far,
+     * measuring distance with wrap-around so that samples are also spread evenly across neighbouring pixels.
+     *
+     * @param numSamples Number of samples.
+     * @return x,y offset of each sample, in [0, 1).
+     */
+    private static float[] createPoisson(int numSamples) {
+
+        Random random = new Random(POISSON_SEED);
+        float[] offsets = new float[2 * numSamples];
+
+        for (int s = 0; s < numSamples; s++) {
+
+            float bestX = 0, bestY = 0, bestDistance = -1;
+            for (int c = 0; c < POISSON_CANDIDATES; c++) {
+
+                float x = random.nextFloat(), y = random.nextFloat();
+
+                float nearest = Float.MAX_VALUE; // Squared distance to the nearest sample so far.
+                for (int k = 0; k < s; k++) {
+                    float dx = Math.abs(x - offsets[2 * k]), dy = Math.abs(y - offsets[2 * k + 1]);
+                    dx = Math.min(dx, 1 - dx);
+                    dy = Math.min(dy, 1 - dy);
+                    nearest = Math.min(nearest, dx * dx + dy * dy);
+                }
+
+                if (nearest > bestDistance) {
+                    bestX = x;
+                    bestY = y;
+                    bestDistance = nearest;
+                }
+
+            }
+
+            offsets[2 * s] = bestX;
+            offsets[2 * s + 1] = bestY;
+
+        }
+
+        return offsets;
+
+    } // createPoisson().
+
+    /**
+     * Parse a pattern given on the command line: 'n' or 'nr' for n rotated-grid samples, 'np' for n Poisson samples,
+     * or 'analytic'.
+     *
+     * @param value Pattern description.
+     * @return Sample pattern.
+     * @throws IllegalArgumentException If the description is invalid.
+     */
+    public static SamplePattern parse(String value) {
+
+        if (value.equals("analytic")) return create(1, Type.ANALYTIC);
+
+        Type type = Type.ROTATED_GRID;
+        if (value.endsWith("p")) {
+            type = Type.POISSON;
+            value = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("r")) {
+            value = value.substring(0, value.length() - 1);
+        }
+
+        try {
+            return create(Integer.parseInt(value), type);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid anti-aliasing pattern: " + value + ".");
+        }
+
+    } // parse().
+
+    // Getters and Setters:
+
+    /**
+     * @return type.
+     */
+    public Type getType() {
+        return type;
+    } // getType().
+
+    /**
+     * @return Number of samples per pixel (1 for analytic coverage).
+     */
+    public int getNumSamples() {
+        return offsets.length / 2;
+    } // getNumSamples().
+
+    /**
+     * @return x,y offset of each sample from the top-left corner of the pixel, in [0, 1) (not a copy).
+     */
+    public float[] getOffsets() {
+        return offsets;
+    } // getOffsets().
+
+
+} // SamplePattern{}.
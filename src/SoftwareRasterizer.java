@@ -0,0 +1,398 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Software renderer drawing triangles into an ARGB framebuffer with a per-pixel depth buffer, so visibility is
+ * resolved for every pixel without sorting triangles. The framebuffer is backed by a BufferedImage, which is blitted
+ * to the screen once per frame. Both buffers are reused between frames and only reallocated when the size changes.
+ * <p>
+ * With more than one thread, the frame is split into square tiles and each triangle is binned to the tiles its bounding
+ * box touches. Tiles are then cleared and rasterized concurrently on a fork-join pool. Each tile owns its pixels and
+ * depth values, so no locking is needed, and each draws its triangles in mesh order, so the frame is identical for any
+ * number of threads.
+ * <p>
+ * Larger Z values are nearer the viewer, matching the order used by painter's algorithm.
+ *
+ * @author 170004680
+ */
+public class SoftwareRasterizer {
+
+
+    private static final int BACKGROUND_ARGB = 0xffffffff; // Frame is cleared to opaque white, as the panel is.
+    private static final int TILE_SIZE = 64; // Width and height of a tile, in pixels.
+
+    private final int threads; // Number of threads rasterizing tiles.
+    private final ForkJoinPool pool; // Pool rasterizing tiles, or null when single-threaded.
+
+    private BufferedImage frame; // Image the framebuffer is drawn to the screen through.
+    private int[] pixels; // ARGB colour per pixel, backing the frame image (row-major).
+    private float[] depth; // Depth of the nearest triangle so far per pixel (row-major).
+    private int width, height; // Dimensions of the framebuffer, in pixels.
+
+    private int tilesX, tilesY; // Number of tile columns and rows covering the frame.
+    private int[][] tileTriangles; // Triangles binned to each tile, in mesh order (row-major over tiles).
+    private int[] tileCounts; // Number of triangles binned to each tile.
+
+
+    /**
+     * Constructor:
+     *
+     * @param threads Number of threads rasterizing tiles (1 draws the whole frame on the calling thread).
+     */
+    public SoftwareRasterizer(int threads) {
+
+        this.threads = Math.max(1, threads);
+        this.pool = (this.threads > 1) ? new ForkJoinPool(this.threads) : null;
+
+    } // SoftwareRasterizer().
+
+    // Utility Functions:
+
+    /**
+     * Start a new frame, sizing the buffers to the given dimensions. Pixels are cleared as the frame is drawn.
+     *
+     * @param width  Width of the frame, in pixels.
+     * @param height Height of the frame, in pixels.
+     */
+    public void beginFrame(int width, int height) {
+
+        if (frame == null || this.width != width || this.height != height) {
+
+            this.width = width;
+            this.height = height;
+            this.frame = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
+            this.pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+            this.depth = new float[pixels.length];
+
+            this.tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+            this.tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+            this.tileTriangles = new int[tilesX * tilesY][16];
+            this.tileCounts = new int[tilesX * tilesY];
+
+        }
+
+    } // beginFrame().
+
+    /**
+     * Clear the frame, then fill the given triangles into it.
+     *
+     * @param vertices     Vertices in window co-ordinates, with the (already lit) colour of each vertex.
+     * @param indices      Three vertex indices per triangle.
+     * @param numTriangles Number of triangles to draw.
+     * @param flatColors   ARGB colour of each triangle for flat shading, or null to interpolate the vertex colours
+     *                     across each triangle (Gouraud shading).
+     */
+    public void drawTriangles(GeometryStore vertices, int[] indices, int numTriangles, int[] flatColors) {
+
+        if (threads == 1) {
+            clear(0, 0, width, height);
+            for (int t = 0; t < numTriangles; t++) drawTriangle(vertices, indices, t, flatColors, 0, 0, width, height);
+            return;
+        }
+
+        binTriangles(vertices, indices, numTriangles);
+
+        List<RecursiveAction> tasks = new ArrayList<>(tileCounts.length);
+        for (int tile = 0; tile < tileCounts.length; tile++) {
+            int tileIndex = tile;
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    drawTile(vertices, indices, flatColors, tileIndex);
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+    } // drawTriangles().
+
+    /**
+     * Bin every triangle to each tile its bounding box touches, keeping mesh order within each tile.
+     *
+     * @param vertices     Vertices in window co-ordinates.
+     * @param indices      Three vertex indices per triangle.
+     * @param numTriangles Number of triangles to bin.
+     */
+    private void binTriangles(GeometryStore vertices, int[] indices, int numTriangles) {
+
+        float[] x = vertices.getX(), y = vertices.getY();
+        Arrays.fill(tileCounts, 0);
+
+        for (int t = 0; t < numTriangles; t++) {
+
+            int i1 = indices[3 * t], i2 = indices[3 * t + 1], i3 = indices[3 * t + 2];
+
+            // Bounding box in tiles, clipped to the frame.
+            int fromTileX = Math.max(0, (int) Math.floor(Math.min(x[i1], Math.min(x[i2], x[i3]))) / TILE_SIZE);
+            int toTileX = Math.min(tilesX - 1, (int) Math.ceil(Math.max(x[i1], Math.max(x[i2], x[i3]))) / TILE_SIZE);
+            int fromTileY = Math.max(0, (int) Math.floor(Math.min(y[i1], Math.min(y[i2], y[i3]))) / TILE_SIZE);
+            int toTileY = Math.min(tilesY - 1, (int) Math.ceil(Math.max(y[i1], Math.max(y[i2], y[i3]))) / TILE_SIZE);
+
+            for (int tileY = fromTileY; tileY <= toTileY; tileY++) {
+                for (int tileX = fromTileX; tileX <= toTileX; tileX++) {
+
+                    int tile = tileY * tilesX + tileX;
+                    if (tileCounts[tile] == tileTriangles[tile].length) {
+                        tileTriangles[tile] = Arrays.copyOf(tileTriangles[tile], 2 * tileTriangles[tile].length);
+                    }
+                    tileTriangles[tile][tileCounts[tile]++] = t;
+
+                }
+            }
+
+        }
+
+    } // binTriangles().
+
+    /**
+     * Clear one tile, then fill the triangles binned to it, drawing only the pixels within the tile.
+     *
+     * @param vertices   Vertices in window co-ordinates.
+     * @param indices    Three vertex indices per triangle.
+     * @param flatColors ARGB colour of each triangle, or null for Gouraud shading.
+     * @param tile       Index of the tile (row-major).
+     */
+    private void drawTile(GeometryStore vertices, int[] indices, int[] flatColors, int tile) {
+
+        int clipMinX = (tile % tilesX) * TILE_SIZE, clipMinY = (tile / tilesX) * TILE_SIZE;
+        int clipMaxX = Math.min(width, clipMinX + TILE_SIZE), clipMaxY = Math.min(height, clipMinY + TILE_SIZE);
+
+        clear(clipMinX, clipMinY, clipMaxX, clipMaxY);
+
+        int[] triangles = tileTriangles[tile];
+        for (int k = 0; k < tileCounts[tile]; k++) {
+            drawTriangle(vertices, indices, triangles[k], flatColors, clipMinX, clipMinY, clipMaxX, clipMaxY);
+        }
+
+    } // drawTile().
+
+    /**
+     * Clear the colour and depth of every pixel in a rectangle of the frame.
+     *
+     * @param clipMinX Left of the rectangle (inclusive).
+     * @param clipMinY Top of the rectangle (inclusive).
+     * @param clipMaxX Right of the rectangle (exclusive).
+     * @param clipMaxY Bottom of the rectangle (exclusive).
+     */
+    private void clear(int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+
+        for (int py = clipMinY; py < clipMaxY; py++) {
+            Arrays.fill(pixels, py * width + clipMinX, py * width + clipMaxX, BACKGROUND_ARGB);
+            Arrays.fill(depth, py * width + clipMinX, py * width + clipMaxX, Float.NEGATIVE_INFINITY);
+        }
+
+    } // clear().
+
+    /**
+     * Fill one triangle, with either its flat colour or its interpolated vertex colours.
+     *
+     * @param vertices   Vertices in window co-ordinates.
+     * @param indices    Three vertex indices per triangle.
+     * @param t          Index of the triangle.
+     * @param flatColors ARGB colour of each triangle, or null for Gouraud shading.
+     * @param clipMinX   Left of the area to draw in (inclusive).
+     * @param clipMinY   Top of the area to draw in (inclusive).
+     * @param clipMaxX   Right of the area to draw in (exclusive).
+     * @param clipMaxY   Bottom of the area to draw in (exclusive).
+     */
+    private void drawTriangle(GeometryStore vertices, int[] indices, int t, int[] flatColors,
+                              int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+
+        fill(vertices, indices[3 * t], indices[3 * t + 1], indices[3 * t + 2],
+                (flatColors != null) ? flatColors[t] : 0, flatColors == null,
+                clipMinX, clipMinY, clipMaxX, clipMaxY);
+
+    } // drawTriangle().
+
+    /**
+     * Rasterize a triangle one scanline at a time. The vertices are ordered top to bottom, then the long edge (top to
+     * bottom) and the two short edges are walked down the rows, stepping their X by a constant per row. Depth and colour
+     * are planes over the triangle, so along each span they are stepped by constant gradients per pixel. A pixel is drawn
+     * when its centre lies inside the triangle (top-left fill rule, so shared edges are drawn once) and the depth there
+     * is nearer than what has already been drawn at that pixel.
+     *
+     * @param vertices Vertices in window co-ordinates.
+     * @param i1       Index of the first vertex of the triangle.
+     * @param i2       Index of the second vertex of the triangle.
+     * @param i3       Index of the third vertex of the triangle.
+     * @param argb     Colour of the triangle, if not interpolating.
+     * @param gouraud  Whether to interpolate the vertex colours (true), or use argb (false).
+     * @param clipMinX Left of the area to draw in (inclusive).
+     * @param clipMinY Top of the area to draw in (inclusive).
+     * @param clipMaxX Right of the area to draw in (exclusive).
+     * @param clipMaxY Bottom of the area to draw in (exclusive).
+     */
+    private void fill(GeometryStore vertices, int i1, int i2, int i3, int argb, boolean gouraud,
+                      int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+
+        float[] y = vertices.getY();
+
+        // Order the vertices from top (smallest Y) to bottom.
+        int top = i1, mid = i2, bottom = i3, swap;
+        if (y[mid] < y[top]) {
+            swap = top;
+            top = mid;
+            mid = swap;
+        }
+        if (y[bottom] < y[mid]) {
+            swap = mid;
+            mid = bottom;
+            bottom = swap;
+        }
+        if (y[mid] < y[top]) {
+            swap = top;
+            top = mid;
+            mid = swap;
+        }
+
+        float[] x = vertices.getX(), z = vertices.getZ();
+        float x0 = x[top], y0 = y[top], x1 = x[mid], y1 = y[mid], x2 = x[bottom], y2 = y[bottom];
+        float dx1 = x1 - x0, dy1 = y1 - y0, dx2 = x2 - x0, dy2 = y2 - y0;
+
+        float area = dx1 * dy2 - dx2 * dy1; // Twice the signed area.
+        if (area == 0 || Float.isNaN(area)) return; // Degenerate triangle covers no pixels.
+        float inverseArea = 1f / area;
+
+        // Gradients of the plane a(x, y) = a0 + dadx * (x - x0) + dady * (y - y0) through the three vertex values.
+        float z0 = z[top], dz1 = z[mid] - z0, dz2 = z[bottom] - z0;
+        float dzdx = (dz1 * dy2 - dz2 * dy1) * inverseArea, dzdy = (dx1 * dz2 - dx2 * dz1) * inverseArea;
+
+        float r0 = 0, drdx = 0, drdy = 0, g0 = 0, dgdx = 0, dgdy = 0, b0 = 0, dbdx = 0, dbdy = 0;
+        if (gouraud) {
+
+            float[] r = vertices.getR(), g = vertices.getG(), b = vertices.getB();
+            r0 = r[top];
+            g0 = g[top];
+            b0 = b[top];
+            float dr1 = r[mid] - r0, dr2 = r[bottom] - r0;
+            float dg1 = g[mid] - g0, dg2 = g[bottom] - g0;
+            float db1 = b[mid] - b0, db2 = b[bottom] - b0;
+            drdx = (dr1 * dy2 - dr2 * dy1) * inverseArea;
+            drdy = (dx1 * dr2 - dx2 * dr1) * inverseArea;
+            dgdx = (dg1 * dy2 - dg2 * dy1) * inverseArea;
+            dgdy = (dx1 * dg2 - dx2 * dg1) * inverseArea;
+            dbdx = (db1 * dy2 - db2 * dy1) * inverseArea;
+            dbdy = (dx1 * db2 - dx2 * db1) * inverseArea;
+
+        }
+
+        float longStep = dx2 / dy2; // X step per row along the long edge (dy2 > 0, as the triangle is not degenerate).
+
+        // Upper half walks the top->mid edge, lower half the mid->bottom edge, both against the long edge.
+        for (int half = 0; half < 2; half++) {
+
+            float edgeX0 = (half == 0) ? x0 : x1, edgeY0 = (half == 0) ? y0 : y1;
+            float edgeX1 = (half == 0) ? x1 : x2, edgeY1 = (half == 0) ? y1 : y2;
+
+            // Rows whose pixel centres lie within the edge's Y range, clipped to the drawing area.
+            int fromY = Math.max(clipMinY, (int) Math.ceil(edgeY0 - .5f));
+            int toY = Math.min(clipMaxY, (int) Math.ceil(edgeY1 - .5f));
+            if (fromY >= toY) continue;
+
+            float shortStep = (edgeX1 - edgeX0) / (edgeY1 - edgeY0);
+
+            for (int py = fromY; py < toY; py++) {
+
+                // Edge crossings at this row's pixel centres. These are taken from the edges, not stepped from the first
+                // row drawn, so they are the same wherever the drawing area starts.
+                float sampleY = py + .5f;
+                float shortX = edgeX0 + (sampleY - edgeY0) * shortStep;
+                float longX = x0 + (sampleY - y0) * longStep;
+
+                // Pixels whose centres lie within the span, then clipped to the drawing area.
+                int spanX = (int) Math.ceil(Math.min(shortX, longX) - .5f);
+                int fromX = Math.max(clipMinX, spanX);
+                int toX = Math.min(clipMaxX, (int) Math.ceil(Math.max(shortX, longX) - .5f));
+                if (fromX >= toX) continue;
+
+                // Plane values at the centre of the first pixel of the whole span. Values are stepped from there (even
+                // over pixels left of the drawing area), so every tile computes bit-identical values for a pixel.
+                float offsetX = spanX + .5f - x0, offsetY = sampleY - y0;
+                float pixelZ = z0 + dzdx * offsetX + dzdy * offsetY;
+                int row = py * width;
+
+                if (gouraud) {
+
+                    float pixelR = r0 + drdx * offsetX + drdy * offsetY;
+                    float pixelG = g0 + dgdx * offsetX + dgdy * offsetY;
+                    float pixelB = b0 + dbdx * offsetX + dbdy * offsetY;
+                    for (int px = spanX; px < fromX; px++) {
+                        pixelZ += dzdx;
+                        pixelR += drdx;
+                        pixelG += dgdx;
+                        pixelB += dbdx;
+                    }
+
+                    for (int k = row + fromX; k < row + toX; k++) {
+
+                        if (pixelZ > depth[k]) { // Nothing nearer has been drawn here yet.
+                            depth[k] = pixelZ;
+                            pixels[k] = argb((int) pixelR, (int) pixelG, (int) pixelB);
+                        }
+                        pixelZ += dzdx;
+                        pixelR += drdx;
+                        pixelG += dgdx;
+                        pixelB += dbdx;
+
+                    }
+
+                } else {
+
+                    for (int px = spanX; px < fromX; px++) pixelZ += dzdx;
+
+                    for (int k = row + fromX; k < row + toX; k++) {
+
+                        if (pixelZ > depth[k]) { // Nothing nearer has been drawn here yet.
+                            depth[k] = pixelZ;
+                            pixels[k] = argb;
+                        }
+                        pixelZ += dzdx;
+
+                    }
+
+                }
+
+            }
+
+        }
+
+    } // fill().
+
+    /**
+     * Form an opaque ARGB integer from r, g, and b components, each confined to the RGB range.
+     *
+     * @param r Red component.
+     * @param g Green component.
+     * @param b Blue component.
+     * @return ARGB integer.
+     */
+    public static int argb(int r, int g, int b) {
+
+        r = Math.max(0, Math.min(255, r));
+        g = Math.max(0, Math.min(255, g));
+        b = Math.max(0, Math.min(255, b));
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+
+    } // argb().
+
+    // Getters and Setters:
+
+    /**
+     * @return Image holding the current frame (reused between frames).
+     */
+    public BufferedImage getFrame() {
+        return frame;
+    } // getFrame().
+
+
+} // SoftwareRasterizer{}.
@@ -0,0 +1,138 @@
+import java.util.Arrays;
+
+/**
+ * Sparse approximation of a set of interpolation weights: the smallest set of faces that covers a given fraction of
+ * the total weight, renormalised so the weights still sum to the same total.
+ * <p>
+ * Keeping the total unchanged means the mean face term of the blend is exact, so the only error comes from the
+ * offsets. For every vertex, the deviation from the exact blend is therefore at most
+ * <p>
+ * sum over kept i of |w'_i - w_i| * |ev_i| * M_i  +  sum over dropped i of |w_i| * |ev_i| * M_i
+ * <p>
+ * where w' are the sparse weights and M_i is the largest per-vertex offset length of face i.
+ *
+ * @author 170004680
+ */
+public class SparseWeights {
+
+
+    private final double[] weights; // Sparse weights, where index i is the weight of face (i + 1).
+    private final int numKept; // Number of faces with a non-zero sparse weight.
+    private final double shapeErrorBound; // Worst-case per-vertex distance from the exact blended shape.
+    private final double colorErrorBound; // Worst-case per-vertex distance from the exact blended colour.
+
+
+    /**
+     * Constructor:
+     *
+     * @param weights         Sparse weights.
+     * @param numKept         Number of faces with a non-zero sparse weight.
+     * @param shapeErrorBound Worst-case per-vertex distance from the exact blended shape.
+     * @param colorErrorBound Worst-case per-vertex distance from the exact blended colour.
+     */
+    private SparseWeights(double[] weights, int numKept, double shapeErrorBound, double colorErrorBound) {
+
+        this.weights = weights;
+        this.numKept = numKept;
+        this.shapeErrorBound = shapeErrorBound;
+        this.colorErrorBound = colorErrorBound;
+
+    } // SparseWeights().
+
+    // Utility Functions:
+
+    /**
+     * Select the fewest faces, largest weights first, whose weights cover the given fraction of the total weight.
+     *
+     * @param weights         Exact interpolation weights, where index i is the weight of face (i + 1).
+     * @param coverage        Fraction of the total weight to keep (between 0 and 1, where 1 keeps every face).
+     * @param shapeEV         Shape weight (sh_ev) of each face.
+     * @param colorEV         Colour weight (tx_ev) of each face.
+     * @param shapeOffsetNorm Largest per-vertex shape offset length of each face.
+     * @param colorOffsetNorm Largest per-vertex colour offset length of each face.
+     * @return Sparse weights along with their error bounds.
+     */
+    public static SparseWeights select(double[] weights, double coverage,
+                                       float[] shapeEV, float[] colorEV,
+                                       float[] shapeOffsetNorm, float[] colorOffsetNorm) {
+
+        int n = weights.length;
+
+        // Order faces by decreasing weight magnitude.
+        Integer[] order = new Integer[n];
+        double total = 0, totalMagnitude = 0;
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+            total += weights[i];
+            totalMagnitude += Math.abs(weights[i]);
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(Math.abs(weights[b]), Math.abs(weights[a])));
+
+        // Take faces until the required fraction of the weight is covered.
+        double target = Math.min(1, Math.max(0, coverage)) * totalMagnitude;
+        double keptMagnitude = 0, keptTotal = 0;
+        int numKept = 0;
+        while (numKept < n && (numKept == 0 || keptMagnitude < target)) {
+            keptMagnitude += Math.abs(weights[order[numKept]]);
+            keptTotal += weights[order[numKept]];
+            numKept++;
+        }
+
+        // Rescale the kept weights so the total - and with it the mean face term - is unchanged.
+        double scale = (keptTotal != 0) ? total / keptTotal : 1;
+        double[] sparse = new double[n];
+        double shapeErrorBound = 0, colorErrorBound = 0;
+
+        for (int j = 0; j < n; j++) {
+
+            int i = order[j];
+            double error; // Difference between the exact and sparse weight of this face.
+
+            if (j < numKept) {
+                sparse[i] = weights[i] * scale;
+                error = Math.abs(sparse[i] - weights[i]);
+            } else {
+                error = Math.abs(weights[i]);
+            }
+
+            shapeErrorBound += error * Math.abs(shapeEV[i]) * shapeOffsetNorm[i];
+            colorErrorBound += error * Math.abs(colorEV[i]) * colorOffsetNorm[i];
+
+        }
+
+        return new SparseWeights(sparse, numKept, shapeErrorBound, colorErrorBound);
+
+    } // select().
+
+    // Getters and Setters:
+
+    /**
+     * @return weights.
+     */
+    public double[] getWeights() {
+        return weights;
+    } // getWeights().
+
+    /**
+     * @return numKept.
+     */
+    public int getNumKept() {
+        return numKept;
+    } // getNumKept().
+
+    /**
+     * @return shapeErrorBound.
+     */
+    public double getShapeErrorBound() {
+        return shapeErrorBound;
+    } // getShapeErrorBound().
+
+    /**
+     * @return colorErrorBound.
+     */
+    public double getColorErrorBound() {
+        return colorErrorBound;
+    } // getColorErrorBound().
+
+
+} // SparseWeights{}.
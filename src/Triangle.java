@@ -314,7 +314,7 @@ public class Triangle implements Paint {
                 new Point2D.Float((float) getPoint2().getX(), (float) getPoint2().getY()),
                 new Point2D.Float((float) getPoint3().getX(), (float) getPoint3().getY()),
                 getPoint1Color(), getPoint2Color(), getPoint3Color(), xform,
-                hints.get(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON);
+                hints.get(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON, P2main.samplePattern);
 
         return bgpc;
 
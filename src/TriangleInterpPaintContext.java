@@ -13,21 +13,28 @@ import java.awt.image.*;
 public class TriangleInterpPaintContext implements PaintContext {
 
 
-    private final float x1, x2, x3, y1, y2, y3; // For barycentric co-ordinates.
-    private final float x23, x13, y23, y13;
-    private final int c1, c2, c3; // Color information as integers (i.e., using getRGB()).
-    private final float denominator;
+    // Package-private so that a FillKernel can read the triangle it is filling.
+    final float x1, x2, x3, y1, y2, y3; // For barycentric co-ordinates.
+    final float x23, x13, y23, y13;
+    final int c1, c2, c3; // Color information as integers (i.e., using getRGB()).
+    final float denominator;
     private final boolean antialiasing; // If using anti-aliasing - RECOMMENDED due to artefact prevalence without.
-    private static final float[] MSAA_SAMPLES = new float[8]; // For anti-aliasing.
+    final SamplePattern samplePattern; // Where coverage is sampled within each pixel, when anti-aliasing.
+    private final float gradient1, gradient2, gradient3; // Length of the gradient of each barycentric co-ordinate.
 
-    // Color model to use: ARGB.
-    private final DirectColorModel cm = new DirectColorModel(32,
+    // SIMD kernel used in place of fillRaster()/fillRasterMSAA(), or null when the Vector API is unavailable.
+    private static final FillKernel VECTOR_KERNEL = loadVectorKernel();
+
+    // Color model to use: ARGB (immutable, so one is shared by every context).
+    private static final DirectColorModel COLOR_MODEL = new DirectColorModel(32,
             0x00ff0000,       // Red.
             0x0000ff00,       // Green.
             0x000000ff,       // Blue.
             0xff000000        // Alpha.
     );
 
+    private WritableRaster raster; // Raster last returned by getRaster(), reused while tiles stay the same size.
+
 
     /**
      * Constructor:
@@ -39,11 +46,12 @@ public class TriangleInterpPaintContext implements PaintContext {
      * @param color2       Colour of point 2 of triangle.
      * @param color3       Colour of point 3 of triangle.
      * @param xform        Affine transformation.
-     * @param antialiasing Whether to use anti-aliasing or not.
+     * @param antialiasing  Whether to use anti-aliasing or not.
+     * @param samplePattern Where coverage is sampled within each pixel, when anti-aliasing.
      */
     public TriangleInterpPaintContext(Point2D.Float p1, Point2D.Float p2, Point2D.Float p3,
                                       Color color1, Color color2, Color color3,
-                                      AffineTransform xform, boolean antialiasing) {
+                                      AffineTransform xform, boolean antialiasing, SamplePattern samplePattern) {
 
         c1 = color1.getRGB();
         c2 = color2.getRGB();
@@ -68,18 +76,29 @@ public class TriangleInterpPaintContext implements PaintContext {
 
         denominator = 1f / ((y23 * x13) - (x23 * y13));
 
+        // Distance (in pixels) from an edge is the barycentric co-ordinate of the opposite vertex over its gradient.
+        gradient1 = (float) (Math.abs(denominator) * Math.hypot(y23, x23));
+        gradient2 = (float) (Math.abs(denominator) * Math.hypot(y13, x13));
+        gradient3 = (float) (Math.abs(denominator) * Math.hypot(y23 - y13, x13 - x23));
+
         this.antialiasing = antialiasing;
+        this.samplePattern = samplePattern;
 
     } // BarycentricGradientPaintContext().
 
     // Overridden Methods:
 
     /**
-     * Overridden but not needed.
+     * Return the raster held by this context to the pool of the current thread.
      */
     @Override
     public void dispose() {
-        // Do nothing.
+
+        if (raster != null) {
+            RasterPool.forThread().release(raster);
+            raster = null;
+        }
+
     } // dispose().
 
     /**
@@ -87,7 +106,7 @@ public class TriangleInterpPaintContext implements PaintContext {
      */
     @Override
     public ColorModel getColorModel() {
-        return cm;
+        return COLOR_MODEL;
     } // getColorModel().
 
     // Utility Functions:
@@ -105,37 +124,67 @@ public class TriangleInterpPaintContext implements PaintContext {
     @Override
     public Raster getRaster(int xA, int yA, int w, int h) {
 
-        WritableRaster rast;
-        rast = createRaster(w, h, new int[w * h]);
+        // Java2D has finished with the previous raster by now, so it can be refilled (every pixel is overwritten).
+        if (raster == null || raster.getWidth() != w || raster.getHeight() != h) {
+            RasterPool pool = RasterPool.forThread();
+            if (raster != null) pool.release(raster);
+            raster = pool.acquire(w, h, COLOR_MODEL);
+        }
 
         // Fill data array with interpolated colors (barycentric co-ordinates).
-        int[] data = dataFromRaster(rast);
+        fill(VECTOR_KERNEL, xA, yA, w, h, dataFromRaster(raster));
+
+        return raster;
+
+    } // getRaster().
 
-        if (antialiasing) { // Recommended.
-            fillRasterMSAA(xA, yA, w, h, data);
+    /**
+     * Fill raster data with the fill this context's anti-aliasing calls for.
+     *
+     * @param kernel Kernel to fill with where it can (same output as the scalar fill, several pixels at a time), or
+     *               null for the scalar fills.
+     * @param xA     The x co-ordinate of the area in device space for which colors are generated.
+     * @param yA     The y co-ordinate of the area in device space for which colors are generated.
+     * @param w      The width of the area in device space.
+     * @param h      The height of the area in device space.
+     * @param data   Raster data to fill.
+     */
+    void fill(FillKernel kernel, int xA, int yA, int w, int h, int[] data) {
+
+        if (antialiasing && samplePattern.getType() == SamplePattern.Type.ANALYTIC) {
+            fillRasterAnalytic(xA, yA, w, h, data);
+        } else if (antialiasing && samplePattern.getNumSamples() > 1) { // Recommended.
+            if (kernel != null) {
+                kernel.fillRasterMSAA(this, xA, yA, w, h, data);
+            } else {
+                fillRasterMSAA(xA, yA, w, h, data);
+            }
+        } else if (kernel != null) {
+            kernel.fillRaster(this, xA, yA, w, h, data);
         } else {
             fillRaster(xA, yA, w, h, data);
         }
 
-        return rast;
-
-    } // getRaster().
+    } // fill().
 
     /**
-     * Create raster for colour data.
+     * Load the SIMD fill kernel if the JDK Vector API is present (i.e., the program was run with
+     * '--add-modules jdk.incubator.vector') and the kernel was built (it is compiled separately, from src-vector). The
+     * kernel is loaded by name so that this class never links against the incubator module when it is absent.
      *
-     * @param w    Raster width.
-     * @param h    Raster height.
-     * @param data Raster data.
-     * @return WritableRaster object.
+     * @return Vector kernel, or null to use the scalar fills.
      */
-    private WritableRaster createRaster(int w, int h, int[] data) {
+    private static FillKernel loadVectorKernel() {
 
-        DataBufferInt buffer = new DataBufferInt(data, w * h);
-        WritableRaster raster = Raster.createPackedRaster(buffer, w, h, w, cm.getMasks(), null);
-        return raster;
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return null;
 
-    } // createRaster().
+        try {
+            return (FillKernel) Class.forName("VectorFillKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null; // Fall back to the scalar fills.
+        }
+
+    } // loadVectorKernel().
 
     /**
      * Used for filling data array with interpolated colors (barycentric co-ordinates). Get raster data.
@@ -192,7 +241,10 @@ public class TriangleInterpPaintContext implements PaintContext {
     } // fillRaster().
 
     /**
-     * Fill raster data array with interpolated colour information, with interpolation (4x multi-sampling).
+     * Fill raster data array with interpolated colour information, with multi-sample anti-aliasing: coverage is tested
+     * at every sample of the pattern, but the colour is evaluated once per pixel, at the centroid of the covered
+     * samples. Partly covered pixels get alpha in proportion to the samples covered, so Java2D blends them over what
+     * is behind.
      *
      * @param xA   The x co-ordinate of the area in device space for which colors are generated.
      * @param yA   The y co-ordinate of the area in device space for which colors are generated.
@@ -202,97 +254,97 @@ public class TriangleInterpPaintContext implements PaintContext {
      */
     private void fillRasterMSAA(int xA, int yA, int w, int h, int[] data) {
 
+        float[] samples = samplePattern.getOffsets();
+        int numSamples = samplePattern.getNumSamples();
+        float inverseSamples = 1f / numSamples;
+
+        float[] ypart1 = new float[numSamples], ypart2 = new float[numSamples]; // Row terms of each sample.
+
         for (int i = 0; i < h; i++) {
 
-            float y = yA + i + MSAA_SAMPLES[1];
-            float ypart11 = -x23 * (y - y3);
-            float ypart21 = x13 * (y - y3);
-            y = yA + i + MSAA_SAMPLES[3];
-            float ypart12 = -x23 * (y - y3);
-            float ypart22 = x13 * (y - y3);
-            y = yA + i + MSAA_SAMPLES[5];
-            float ypart13 = -x23 * (y - y3);
-            float ypart23 = x13 * (y - y3);
-            y = yA + i + MSAA_SAMPLES[7];
-            float ypart14 = -x23 * (y - y3);
-            float ypart24 = x13 * (y - y3);
+            for (int s = 0; s < numSamples; s++) {
+                float y = yA + i + samples[2 * s + 1];
+                ypart1[s] = -x23 * (y - y3);
+                ypart2[s] = x13 * (y - y3);
+            }
 
             for (int j = 0; j < w; j++) {
 
-                float x = xA + j + MSAA_SAMPLES[0];
-                float xpart11 = y23 * (x - x3);
-                float xpart21 = -y13 * (x - x3);
-                x = xA + j + MSAA_SAMPLES[2];
-                float xpart12 = y23 * (x - x3);
-                float xpart22 = -y13 * (x - x3);
-                x = xA + j + MSAA_SAMPLES[4];
-                float xpart13 = y23 * (x - x3);
-                float xpart23 = -y13 * (x - x3);
-                x = xA + j + MSAA_SAMPLES[6];
-                float xpart14 = y23 * (x - x3);
-                float xpart24 = -y13 * (x - x3);
-
-                // Calculate barycentric coordinates for the 4 sub pixel samples.
-                float l11 = (xpart11 + ypart11) * denominator;
-                float l21 = (xpart21 + ypart21) * denominator;
-                float l31 = 1f - l11 - l21;
-
-                float l12 = (xpart12 + ypart12) * denominator;
-                float l22 = (xpart22 + ypart22) * denominator;
-                float l32 = 1f - l12 - l22;
-
-                float l13 = (xpart13 + ypart13) * denominator;
-                float l23 = (xpart23 + ypart23) * denominator;
-                float l33 = 1f - l13 - l23;
-
-                float l14 = (xpart14 + ypart14) * denominator;
-                float l24 = (xpart24 + ypart24) * denominator;
-                float l34 = 1f - l14 - l24;
-
-                // Determine sample colors and weights (out of triangle samples have 0 weight).
-                int mix1, mix2, mix3, mix4;
-                float w1, w2, w3, w4;
-
-                if (l11 < 0 || l21 < 0 || l31 < 0) {
-                    mix1 = 0;
-                    w1 = 0f;
-                } else {
-                    mix1 = mixColor3(c1, c2, c3, l11, l21, l31);
-                    w1 = 1f;
-                }
+                // Sum the barycentric coordinates of the covered samples (the centroid, up to scale).
+                float l1Sum = 0, l2Sum = 0, l3Sum = 0;
+                int covered = 0;
+                for (int s = 0; s < numSamples; s++) {
+
+                    float x = xA + j + samples[2 * s];
+                    float l1 = (y23 * (x - x3) + ypart1[s]) * denominator;
+                    float l2 = (-y13 * (x - x3) + ypart2[s]) * denominator;
+                    float l3 = 1f - l1 - l2;
+                    if (l1 < 0 || l2 < 0 || l3 < 0) continue; // Sample outside the triangle.
+
+                    l1Sum += l1;
+                    l2Sum += l2;
+                    l3Sum += l3;
+                    covered++;
 
-                if (l12 < 0 || l22 < 0 || l32 < 0) {
-                    mix2 = 0;
-                    w2 = 0f;
-                } else {
-                    mix2 = mixColor3(c1, c2, c3, l12, l22, l32);
-                    w2 = 1f;
                 }
 
-                if (l13 < 0 || l23 < 0 || l33 < 0) {
-                    mix3 = 0;
-                    w3 = 0f;
+                if (covered == 0) {
+                    data[i * w + j] = 0;
                 } else {
-                    mix3 = mixColor3(c1, c2, c3, l13, l23, l33);
-                    w3 = 1f;
+                    int color = mixColor3(c1, c2, c3, l1Sum, l2Sum, l3Sum); // Normalises, so sums will do.
+                    data[i * w + j] = (covered == numSamples) ? color : scaleColorAlpha(color, covered * inverseSamples);
                 }
 
-                if (l14 < 0 || l24 < 0 || l34 < 0) {
-                    mix4 = 0;
-                    w4 = 0f;
+            }
+
+        }
+
+    } // fillRasterMSAA().
+
+    /**
+     * Fill raster data array with interpolated colour information, with analytic anti-aliasing: coverage of each pixel
+     * is estimated from the distance of its centre to the nearest edge, so edges are smooth without any extra samples.
+     *
+     * @param xA   The x co-ordinate of the area in device space for which colors are generated.
+     * @param yA   The y co-ordinate of the area in device space for which colors are generated.
+     * @param w    The width of the area in device space.
+     * @param h    The height of the area in device space.
+     * @param data Raster data to fill.
+     */
+    private void fillRasterAnalytic(int xA, int yA, int w, int h, int[] data) {
+
+        for (int i = 0; i < h; i++) {
+
+            float y = yA + i + .5f;
+            float ypart11 = -x23 * (y - y3);
+            float ypart21 = x13 * (y - y3);
+
+            for (int j = 0; j < w; j++) {
+
+                float x = xA + j + .5f;
+
+                // Calculate barycentric coordinates for (x, y).
+                float l1 = (y23 * (x - x3) + ypart11) * denominator;
+                float l2 = (-y13 * (x - x3) + ypart21) * denominator;
+                float l3 = 1f - l1 - l2;
+
+                // A pixel whose centre is on an edge is half covered, one pixel inside is fully covered.
+                float distance = Math.min(l1 / gradient1, Math.min(l2 / gradient2, l3 / gradient3));
+                float coverage = Math.min(1f, distance + .5f);
+
+                if (!(coverage > 0)) { // Also catches NaN, from degenerate triangles.
+                    data[i * w + j] = 0;
                 } else {
-                    mix4 = mixColor3(c1, c2, c3, l14, l24, l34);
-                    w4 = 1f;
+                    // Colour at the nearest point of the triangle, as the centre itself may be just outside.
+                    int color = mixColor3(c1, c2, c3, Math.max(0, l1), Math.max(0, l2), Math.max(0, l3));
+                    data[i * w + j] = (coverage == 1f) ? color : scaleColorAlpha(color, coverage);
                 }
 
-                int color = mixColor4(mix1, mix2, mix3, mix4, w1, w2, w3, w4);
-                data[i * w + j] = scaleColorAlpha(color, (w1 + w2 + w3 + w4) * .25f);
-
             }
 
         }
 
-    } // fillRasterMSAA().
+    } // fillRasterAnalytic().
 
     /**
      * Mix 3 colors according to given weights.
@@ -316,30 +368,6 @@ public class TriangleInterpPaintContext implements PaintContext {
 
     } // mixColor3().
 
-    /**
-     * Mix 4 colors according to given weights.
-     *
-     * @param c1 Color 1.
-     * @param c2 Color 2.
-     * @param c3 Color 3.
-     * @param c4 Color 4.
-     * @param m1 Weight 1.
-     * @param m2 Weight 2.
-     * @param m3 Weight 3.
-     * @param m4 Weight 4.
-     * @return Mixed colour integer representation.
-     */
-    private static int mixColor4(int c1, int c2, int c3, int c4, float m1, float m2, float m3, float m4) {
-
-        float normalize = 1f / (m1 + m2 + m3 + m4);
-        float a = (a(c1) * m1 + a(c2) * m2 + a(c3) * m3 + a(c4) * m4) * normalize;
-        float r = (r(c1) * m1 + r(c2) * m2 + r(c3) * m3 + r(c4) * m4) * normalize;
-        float g = (g(c1) * m1 + g(c2) * m2 + g(c3) * m3 + g(c4) * m4) * normalize;
-        float b = (b(c1) * m1 + b(c2) * m2 + b(c3) * m3 + b(c4) * m4) * normalize;
-        return argb((int) a, (int) r, (int) g, (int) b);
-
-    } // mixColor4().
-
     /**
      * Scale alpha component of color.
      *
@@ -410,4 +438,35 @@ public class TriangleInterpPaintContext implements PaintContext {
     } // argb().
 
 
+    /**
+     * Alternative implementation of fillRaster() and fillRasterMSAA(), which must produce bit-identical output.
+     */
+    interface FillKernel {
+
+        /**
+         * Equivalent to context.fillRaster(xA, yA, w, h, data).
+         *
+         * @param context Context holding the triangle and its colours.
+         * @param xA      The x co-ordinate of the area in device space for which colors are generated.
+         * @param yA      The y co-ordinate of the area in device space for which colors are generated.
+         * @param w       The width of the area in device space.
+         * @param h       The height of the area in device space.
+         * @param data    Raster data to fill.
+         */
+        void fillRaster(TriangleInterpPaintContext context, int xA, int yA, int w, int h, int[] data);
+
+        /**
+         * Equivalent to context.fillRasterMSAA(xA, yA, w, h, data).
+         *
+         * @param context Context holding the triangle and its colours.
+         * @param xA      The x co-ordinate of the area in device space for which colors are generated.
+         * @param yA      The y co-ordinate of the area in device space for which colors are generated.
+         * @param w       The width of the area in device space.
+         * @param h       The height of the area in device space.
+         * @param data    Raster data to fill.
+         */
+        void fillRasterMSAA(TriangleInterpPaintContext context, int xA, int yA, int w, int h, int[] data);
+
+    } // FillKernel{}.
+
 } // TriangleInterpPaintContext{}.
@@ -1,5 +1,3 @@
-import java.util.ArrayList;
-
 /**
  * Custom data object to represent a triplet.
  *
@@ -30,18 +28,10 @@ public class Triplet {
     // Getters and Setters:
 
     /**
-     * @return Array list of the triple values (ordered from first to last element).
+     * @return Array of the triple values (ordered from first to last element).
      */
-    public ArrayList<Double> getTriplet() {
-
-        ArrayList<Double> triplet = new ArrayList<>();
-
-        triplet.add(first);
-        triplet.add(second);
-        triplet.add(third);
-
-        return triplet;
-
+    public double[] getTriplet() {
+        return new double[]{first, second, third};
     } // getTriplet().
 
     /**